@@ -0,0 +1,103 @@
+package com.cb.product.config;
+
+import com.cb.product.entity.Product;
+import com.cb.product.record.ProductRecord;
+import com.cb.product.repository.ProductRepository;
+import com.cb.product.service.ProductService;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+// MongoDBContainer runs a single node replica set, which is all a change stream needs
+@Testcontainers
+@SpringBootTest(properties = {
+        "product.cache-invalidation.enabled=true",
+        "product.cache-invalidation.token-save-interval=0s"
+})
+class ProductCacheInvalidatorIntiTest {
+
+    @Container
+    @ServiceConnection
+    public static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:7.0.0")
+            .withExposedPorts(27017);
+
+    @Autowired
+    ProductService productService;
+
+    @Autowired
+    ProductRepository productRepository;
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    @Autowired
+    CacheManager cacheManager;
+
+    @Autowired
+    ProductProperties productProperties;
+
+    Cache cache;
+
+    @BeforeEach
+    void setup() {
+        cache = cacheManager.getCache(CacheConfig.PRODUCT_CACHE);
+        cache.clear();
+    }
+
+    @Test
+    void writeFromElsewhereEvictsCachedProductTest() throws InterruptedException {
+        Product product = productRepository.save(new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", "", "", "", null, null, null, true));
+        productService.getProduct(product.getId(), false);
+        assertNotNull(cache.get(product.getId()));
+
+        // another node or a batch job, the cache annotations never see this write
+        mongoTemplate.updateFirst(query(where("id").is(product.getId())), new Update().set("price",
+                new BigDecimal("54999")), Product.class);
+
+        await(() -> cache.get(product.getId()) == null);
+        ProductRecord productRecord = productService.getProduct(product.getId(), false);
+        assertEquals(0, new BigDecimal("54999").compareTo(productRecord.price()));
+    }
+
+    @Test
+    void resumeTokenSavedTest() throws InterruptedException {
+        productRepository.save(new Product(null, "iPhone 15", new BigDecimal("69999"),
+                "iPhone 15 (128 GB) - Black", "", "", "", null, null, null, true));
+
+        ProductProperties.CacheInvalidation properties = productProperties.getCacheInvalidation();
+        await(() -> mongoTemplate.getCollection(properties.getTokenCollection())
+                .countDocuments(new Document("_id", properties.getListenerId())) == 1);
+        Document saved = mongoTemplate.getCollection(properties.getTokenCollection())
+                .find(new Document("_id", properties.getListenerId())).first();
+        assertTrue(saved.get("token", Document.class).containsKey("_data"));
+    }
+
+    static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within 10s");
+            Thread.sleep(50);
+        }
+    }
+}
@@ -293,6 +293,7 @@ class ProductControllerIntiTest {
 
         given().
                 contentType(ContentType.JSON)
+                .queryParam("includeDeleted", true)
                 .log().all().
 
                 when()
@@ -0,0 +1,258 @@
+package com.cb.product.controller;
+
+import com.cb.product.entity.Product;
+import com.cb.product.record.ProductRecord;
+import com.cb.product.repository.ProductRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.MongoDBContainer;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Closed-loop load test against the real ProductController: every worker runs create, get, list and delete back to
+// back and the latency of each call goes into a per operation HdrHistogram. Off by default, run it with
+//   mvn verify -Dload.test=true -Dit.test=ProductControllerLoadTest -Dfailsafe.failIfNoSpecifiedTests=false
+// and tune it with -Dload.concurrency, -Dload.warmup, -Dload.duration (ISO-8601, e.g. PT1M) and -Dload.seed.
+// Uses a Mongo container when Docker is there and the in-process mongo-java-server otherwise; numbers taken on the
+// stand-in say how the service behaves, not how a real Mongo does.
+@EnabledIfSystemProperty(named = "load.test", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ProductControllerLoadTest {
+
+    static final int CONCURRENCY = Integer.getInteger("load.concurrency", 32);
+    static final Duration WARMUP = Duration.parse(System.getProperty("load.warmup", "PT10S"));
+    static final Duration DURATION = Duration.parse(System.getProperty("load.duration", "PT30S"));
+    static final int SEED = Integer.getInteger("load.seed", 1_000);
+    static final Path REPORT_DIR = Path.of(System.getProperty("load.report-dir", "target/load-test"));
+
+    // microseconds, up to a minute per call
+    static final long HIGHEST_TRACKABLE = Duration.ofMinutes(1).toNanos() / 1_000;
+
+    enum Operation {CREATE, GET, LIST, DELETE}
+
+    static MongoDBContainer mongoDBContainer;
+
+    static MongoServer mongoServer;
+
+    @Autowired
+    ProductRepository productRepository;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @LocalServerPort
+    int localServerPort;
+
+    HttpClient httpClient;
+
+    Map<Operation, Histogram> histograms;
+
+    Map<Operation, AtomicLong> errors;
+
+    @TestConfiguration
+    static class StandInConfig {
+
+        // mongo-java-server lists text indexes without their weights, which IndexInfo cannot read back, so the
+        // index check only runs against the container
+        @Bean
+        static BeanDefinitionRegistryPostProcessor skipIndexInitializer() {
+            return registry -> {
+                if (mongoServer != null && registry.containsBeanDefinition("productIndexInitializer")) {
+                    registry.removeBeanDefinition("productIndexInitializer");
+                }
+            };
+        }
+    }
+
+    @DynamicPropertySource
+    static void mongoProperties(DynamicPropertyRegistry registry) {
+        InetSocketAddress address;
+        if (DockerClientFactory.instance().isDockerAvailable()) {
+            mongoDBContainer = new MongoDBContainer("mongo:7.0.0").withExposedPorts(27017);
+            mongoDBContainer.start();
+            address = new InetSocketAddress(mongoDBContainer.getHost(), mongoDBContainer.getFirstMappedPort());
+        } else {
+            mongoServer = new MongoServer(new MemoryBackend());
+            address = mongoServer.bind();
+        }
+        registry.add("spring.data.mongodb.host", address::getHostString);
+        registry.add("spring.data.mongodb.port", address::getPort);
+    }
+
+    @AfterAll
+    static void stopMongo() {
+        if (mongoDBContainer != null) {
+            mongoDBContainer.stop();
+        }
+        if (mongoServer != null) {
+            mongoServer.shutdownNow();
+        }
+    }
+
+    @BeforeEach
+    void setup() {
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        productRepository.deleteAll();
+        productRepository.saveAll(IntStream.range(0, SEED)
+                .mapToObj(i -> new Product(null, "Seed " + i, new BigDecimal("999"), "Seed product " + i,
+                        "", "", "", null, null, null, true))
+                .toList());
+    }
+
+    @Test
+    void productEndpointsUnderLoadTest() throws Exception {
+        run(WARMUP);
+
+        histograms = new EnumMap<>(Operation.class);
+        errors = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            histograms.put(operation, new ConcurrentHistogram(HIGHEST_TRACKABLE, 3));
+            errors.put(operation, new AtomicLong());
+        }
+        long start = System.nanoTime();
+        run(DURATION);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        report(elapsed);
+        for (Operation operation : Operation.values()) {
+            assertTrue(histograms.get(operation).getTotalCount() > 0, operation + " was never measured");
+            assertEquals(0, errors.get(operation).get(), operation + " had failed calls");
+        }
+    }
+
+    void run(Duration duration) throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Thread> workers = new ArrayList<>(CONCURRENCY);
+        for (int worker = 0; worker < CONCURRENCY; worker++) {
+            workers.add(Thread.ofVirtual().name("load-", worker).start(() -> {
+                while (System.nanoTime() < deadline) {
+                    iteration();
+                }
+            }));
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    void iteration() {
+        HttpResponse<String> created = call(Operation.CREATE, HttpRequest.newBuilder(uri(""))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(productJson())), 201);
+        String id = created == null ? null : id(created.body());
+        if (id == null) {
+            return;
+        }
+        call(Operation.GET, HttpRequest.newBuilder(uri("/" + id)).GET(), 200);
+        call(Operation.LIST, HttpRequest.newBuilder(uri("?size=50")).GET(), 200);
+        call(Operation.DELETE, HttpRequest.newBuilder(uri("/" + id)).DELETE(), 200);
+    }
+
+    HttpResponse<String> call(Operation operation, HttpRequest.Builder request, int expectedStatus) {
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+            record(operation, System.nanoTime() - start, response.statusCode() == expectedStatus);
+            return response;
+        } catch (IOException e) {
+            record(operation, System.nanoTime() - start, false);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    void record(Operation operation, long nanos, boolean success) {
+        // histograms are only created once the warmup is over
+        if (histograms == null) {
+            return;
+        }
+        histograms.get(operation).recordValue(Math.min(nanos / 1_000, HIGHEST_TRACKABLE));
+        if (!success) {
+            errors.get(operation).incrementAndGet();
+        }
+    }
+
+    void report(Duration elapsed) throws IOException {
+        Files.createDirectories(REPORT_DIR);
+        double seconds = elapsed.toNanos() / 1e9;
+        StringBuilder summary = new StringBuilder(String.format("%s, concurrency %d, closed loop, %.1fs%n",
+                mongoServer == null ? "mongo container" : "in-process mongo", CONCURRENCY, seconds));
+        summary.append(String.format("%-8s %10s %10s %10s %10s %10s %10s %8s%n",
+                "op", "count", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "errors"));
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = histograms.get(operation);
+            summary.append(String.format("%-8s %10d %10.1f %10.3f %10.3f %10.3f %10.3f %8d%n", operation,
+                    histogram.getTotalCount(), histogram.getTotalCount() / seconds,
+                    histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+                    histogram.getValueAtPercentile(99.9) / 1000.0, histogram.getMaxValue() / 1000.0,
+                    errors.get(operation).get()));
+            try (PrintStream out = new PrintStream(REPORT_DIR.resolve(operation.name().toLowerCase() + ".hgrm").toFile())) {
+                histogram.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+        Files.writeString(REPORT_DIR.resolve("summary.txt"), summary);
+        System.out.print(summary);
+    }
+
+    URI uri(String path) {
+        return URI.create("http://localhost:" + localServerPort + "/api/v1/product" + path);
+    }
+
+    String productJson() {
+        try {
+            return objectMapper.writeValueAsString(new ProductRecord(null, "iPhone 14", new BigDecimal("58999"),
+                    "iPhone 14 (128 GB) - Midnight", "", "", "", null, null, null, true));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    String id(String body) {
+        try {
+            return objectMapper.readTree(body).path("id").asText(null);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.cb.product.controller;
+
+import com.cb.product.entity.Product;
+import com.cb.product.record.ProductRecord;
+import io.restassured.http.ContentType;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+
+import static com.cb.product.controller.ProductControllerIntiTest.LONG_DESC_1;
+import static io.restassured.RestAssured.baseURI;
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.notNullValue;
+
+// The batched writes fail per product from a bulk write error, these check they still reach the client as 409 and 400
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "product.write-batch.enabled=true")
+class ProductControllerWriteBatchIntiTest {
+
+    @Container
+    @ServiceConnection
+    public static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:7.0.0")
+            .withExposedPorts(27017);
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+    @LocalServerPort
+    private int localServerPort;
+
+    @BeforeEach
+    void setup() {
+        baseURI = "http://localhost:" + localServerPort;
+    }
+
+    @AfterEach
+    void cleanup() {
+        mongoTemplate.remove(new Query(), Product.class);
+        if (mongoTemplate.indexOps(Product.class).getIndexInfo().stream()
+                .anyMatch(indexInfo -> indexInfo.getName().equals("name_unique"))) {
+            mongoTemplate.indexOps(Product.class).dropIndex("name_unique");
+        }
+        mongoTemplate.getDb().runCommand(new Document("collMod", mongoTemplate.getCollectionName(Product.class))
+                .append("validator", new Document()));
+    }
+
+    @Test
+    void saveDuplicateKeyTest() {
+        mongoTemplate.indexOps(Product.class)
+                .ensureIndex(new Index().on("name", Sort.Direction.ASC).unique().named("name_unique"));
+        ProductRecord productRecord = new ProductRecord(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true);
+        given()
+                .contentType(ContentType.JSON)
+                .body(productRecord)
+                .when()
+                .post("/api/v1/product")
+                .then()
+                .log().all()
+                .assertThat().statusCode(201)
+                .body("id", notNullValue());
+
+        given()
+                .contentType(ContentType.JSON)
+                .body(productRecord)
+                .when()
+                .post("/api/v1/product")
+                .then()
+                .log().all()
+                .assertThat().statusCode(409);
+    }
+
+    @Test
+    void saveDocumentValidationTest() {
+        // a limit the database enforces but the request validation does not know about
+        mongoTemplate.getDb().runCommand(new Document("collMod", mongoTemplate.getCollectionName(Product.class))
+                .append("validator", new Document("price", new Document("$lte", 100000))));
+        ProductRecord productRecord = new ProductRecord(null, "iPhone 14 Pro", new BigDecimal("158999"),
+                "iPhone 14 Pro (128 GB) - Space Black", LONG_DESC_1, "", "",
+                null, null, null, true);
+        given()
+                .contentType(ContentType.JSON)
+                .body(productRecord)
+                .when()
+                .post("/api/v1/product")
+                .then()
+                .log().all()
+                .assertThat().statusCode(400);
+    }
+}
@@ -0,0 +1,119 @@
+package com.cb.product.repository;
+
+import com.cb.product.entity.Product;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Drives the repository writes and reads, with the write batcher on, from virtual threads against a real Mongo while
+// JFR records jdk.VirtualThreadPinned events, and fails on any: a virtual thread that blocked in the driver's pool,
+// the batcher or our own code while stuck to its carrier thread. Part of the load suite, run it with
+//   mvn verify -Dload.test=true -Dit.test=ProductPinningIntiTest -Dfailsafe.failIfNoSpecifiedTests=false
+// and size it with -Dload.requests.
+@EnabledIfSystemProperty(named = "load.test", matches = "true")
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = "product.write-batch.enabled=true")
+class ProductPinningIntiTest {
+
+    static final int REQUESTS = Integer.getInteger("load.requests", 10_000);
+
+    @Container
+    @ServiceConnection
+    public static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:7.0.0")
+            .withExposedPorts(27017);
+
+    @Autowired
+    ProductRepository productRepository;
+
+    @TempDir
+    Path recordingDir;
+
+    @Test
+    void repositoryCallsDoNotPinTest() throws Exception {
+        // class loading and the driver's first connections are one-off, steady state is what this is about
+        handleRequest(0);
+
+        List<Future<?>> requests = new ArrayList<>(REQUESTS);
+        List<RecordedEvent> pinned = recordPinnedEvents(() -> {
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                IntStream.range(1, REQUESTS).forEach(request -> requests.add(executor.submit(() -> handleRequest(request))));
+            }
+        });
+
+        // a failed call would otherwise only show up as fewer calls that could have pinned
+        for (Future<?> request : requests) {
+            request.get();
+        }
+        assertTrue(pinned.isEmpty(), () -> "Virtual threads pinned " + pinned.size() + " times, first at "
+                + pinned.get(0).getStackTrace());
+    }
+
+    @Test
+    void pinningIsDetectedTest() throws Exception {
+        // synchronized blocks stop pinning from JDK 24 on, so the control case only holds before that
+        assumeTrue(Runtime.version().feature() < 24);
+        Object monitor = new Object();
+
+        List<RecordedEvent> pinned = recordPinnedEvents(() -> {
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                executor.submit(() -> {
+                    synchronized (monitor) {
+                        Thread.sleep(20);
+                    }
+                    return null;
+                });
+            }
+        });
+
+        assertFalse(pinned.isEmpty());
+    }
+
+    // create, read, replace, patch and delete one product; the unversioned writes go through the batcher
+    private void handleRequest(int request) {
+        Product created = productRepository.create(new Product(null, "iPhone " + request, new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", "", "", "", null, null, null, true));
+        assertTrue(productRepository.findByIdAndActiveTrue(created.getId()).isPresent());
+        created.setVersion(null);
+        created.setShortDesc("iPhone 14 (256 GB) - Midnight");
+        assertTrue(productRepository.replace(created).isPresent());
+        assertTrue(productRepository.patch(created.getId(), Map.of("price", new BigDecimal("54999")), null).isPresent());
+        assertTrue(productRepository.softDeleteById(created.getId(), null));
+    }
+
+    private List<RecordedEvent> recordPinnedEvents(Runnable load) throws Exception {
+        Path file = recordingDir.resolve("pinning.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+            load.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("jdk.VirtualThreadPinned"))
+                .toList();
+    }
+}
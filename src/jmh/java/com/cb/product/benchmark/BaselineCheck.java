@@ -0,0 +1,80 @@
+package com.cb.product.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Compares a JMH json result with the checked-in baseline and exits non-zero when time or allocation per op
+// grew beyond the tolerance. Allocation per op is stable across machines, time is only comparable on the same box.
+public final class BaselineCheck {
+
+    static final String ALLOC_NORM = "gc.alloc.rate.norm";
+
+    private BaselineCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: BaselineCheck <baseline.json> <result.json> [tolerance]");
+            System.exit(2);
+        }
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 0.25;
+        Map<String, JsonNode> baseline = read(new File(args[0]));
+        Map<String, JsonNode> result = read(new File(args[1]));
+
+        int regressions = 0;
+        for (Map.Entry<String, JsonNode> entry : result.entrySet()) {
+            JsonNode expected = baseline.get(entry.getKey());
+            if (expected == null) {
+                System.out.printf("NEW   %s%n", entry.getKey());
+                continue;
+            }
+            regressions += compare(entry.getKey(), "time", score(expected.path("primaryMetric")),
+                    score(entry.getValue().path("primaryMetric")), entry.getValue().path("primaryMetric")
+                            .path("scoreUnit").asText(), tolerance);
+            regressions += compare(entry.getKey(), "alloc", allocNorm(expected), allocNorm(entry.getValue()),
+                    "B/op", tolerance);
+        }
+        System.out.printf("%d regression(s) beyond %.0f%%%n", regressions, tolerance * 100);
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    static int compare(String benchmark, String metric, double expected, double actual, String unit,
+                       double tolerance) {
+        if (Double.isNaN(expected) || Double.isNaN(actual)) {
+            return 0;
+        }
+        // a few bytes of allocation noise on near zero baselines is not a regression
+        boolean regressed = actual > expected * (1 + tolerance) && actual - expected > 16;
+        System.out.printf("%-5s %s %s: %.1f -> %.1f %s%n", regressed ? "FAIL" : "OK", benchmark, metric,
+                expected, actual, unit);
+        return regressed ? 1 : 0;
+    }
+
+    static double allocNorm(JsonNode run) {
+        JsonNode secondary = run.path("secondaryMetrics");
+        JsonNode metric = secondary.has(ALLOC_NORM) ? secondary.get(ALLOC_NORM) : secondary.get("·" + ALLOC_NORM);
+        return metric == null ? Double.NaN : score(metric);
+    }
+
+    static double score(JsonNode metric) {
+        return metric.path("score").isNumber() ? metric.path("score").asDouble() : Double.NaN;
+    }
+
+    static Map<String, JsonNode> read(File file) throws IOException {
+        Map<String, JsonNode> runs = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file)) {
+            Map<String, String> params = new TreeMap<>();
+            run.path("params").fields().forEachRemaining(param -> params.put(param.getKey(), param.getValue().asText()));
+            runs.put(run.path("benchmark").asText() + (params.isEmpty() ? "" : params), run);
+        }
+        return runs;
+    }
+}
@@ -0,0 +1,56 @@
+package com.cb.product.benchmark;
+
+import com.cb.product.entity.Product;
+import com.mongodb.MongoClientSettings;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductBsonBenchmark {
+
+    MappingMongoConverter converter;
+
+    Codec<Document> documentCodec;
+
+    Product product;
+
+    Document document;
+
+    @Setup
+    public void setup() {
+        converter = ProductFixtures.converter();
+        documentCodec = MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+        product = ProductFixtures.product(0);
+        document = new Document();
+        converter.write(product, document);
+    }
+
+    @Benchmark
+    public Document writeDocument() {
+        Document target = new Document();
+        converter.write(product, target);
+        return target;
+    }
+
+    @Benchmark
+    public RawBsonDocument encodeDocument() {
+        return new RawBsonDocument(document, documentCodec);
+    }
+
+    @Benchmark
+    public RawBsonDocument writeAndEncode() {
+        Document target = new Document();
+        converter.write(product, target);
+        return new RawBsonDocument(target, documentCodec);
+    }
+}
@@ -0,0 +1,68 @@
+package com.cb.product.benchmark;
+
+import com.cb.product.entity.Product;
+import com.cb.product.record.ProductRecord;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+final class ProductFixtures {
+
+    static final String LONG_DESC = """
+            About this item
+            15.40 cm (6.1-inch) Super Retina XDR display
+            Advanced camera system for better photos in any light
+            Cinematic mode now in 4K Dolby Vision up to 30 fps
+            Action mode for smooth, steady, handheld videos
+            All-day battery life and up to 20 hours of video playback
+            A15 Bionic chip with 5-core GPU for lightning-fast performance. Superfast 5G cellular
+            """;
+
+    static final LocalDateTime NOW = LocalDateTime.of(2024, 1, 1, 10, 30);
+
+    private ProductFixtures() {
+    }
+
+    static Product product(int i) {
+        Product product = new Product(new ObjectId().toHexString(), "iPhone 14 #" + i, new BigDecimal("58999.00"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC, "https://cdn.example.com/thumb/" + i + ".jpg",
+                "https://cdn.example.com/image/" + i + ".jpg", NOW, NOW.plusMinutes(i), null, true);
+        product.setVersion((long) i);
+        return product;
+    }
+
+    static List<Product> products(int size) {
+        return IntStream.range(0, size).mapToObj(ProductFixtures::product).toList();
+    }
+
+    static ProductRecord productRecord(int i) {
+        return new ProductRecord(new ObjectId().toHexString(), "iPhone 14 #" + i, new BigDecimal("58999.00"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC, "https://cdn.example.com/thumb/" + i + ".jpg",
+                "https://cdn.example.com/image/" + i + ".jpg", NOW, NOW.plusMinutes(i), null, true, (long) i);
+    }
+
+    static List<ProductRecord> productRecords(int size) {
+        return IntStream.range(0, size).mapToObj(ProductFixtures::productRecord).toList();
+    }
+
+    // the same converter setup MongoDataAutoConfiguration builds, without a database behind it
+    static MappingMongoConverter converter() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.setInitialEntitySet(Set.of(Product.class));
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+}
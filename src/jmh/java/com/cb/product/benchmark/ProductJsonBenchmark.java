@@ -0,0 +1,54 @@
+package com.cb.product.benchmark;
+
+import com.cb.product.record.ProductRecord;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductJsonBenchmark {
+
+    ObjectMapper objectMapper;
+
+    ProductRecord productRecord;
+
+    @State(Scope.Benchmark)
+    public static class ProductRecords {
+
+        @Param({"50", "10000"})
+        int size;
+
+        List<ProductRecord> productRecords;
+
+        @Setup
+        public void setup() {
+            productRecords = ProductFixtures.productRecords(size);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        // the builder applies the same defaults as the auto-configured mapper (java.time, ISO dates)
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        productRecord = ProductFixtures.productRecord(0);
+    }
+
+    @Benchmark
+    public byte[] writeProductRecord() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(productRecord);
+    }
+
+    @Benchmark
+    public byte[] writeProductRecords(ProductRecords productRecords) throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(productRecords.productRecords);
+    }
+}
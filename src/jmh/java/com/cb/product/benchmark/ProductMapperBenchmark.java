@@ -0,0 +1,54 @@
+package com.cb.product.benchmark;
+
+import com.cb.product.entity.Product;
+import com.cb.product.mapper.ProductMapper;
+import com.cb.product.mapper.ProductMapperImpl;
+import com.cb.product.record.ProductRecord;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductMapperBenchmark {
+
+    ProductMapper productMapper;
+
+    Product product;
+
+    @State(Scope.Benchmark)
+    public static class Products {
+
+        // a default page, the max page and a full export
+        @Param({"50", "500", "10000"})
+        int size;
+
+        List<Product> products;
+
+        @Setup
+        public void setup() {
+            products = ProductFixtures.products(size);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        productMapper = new ProductMapperImpl();
+        product = ProductFixtures.product(0);
+    }
+
+    @Benchmark
+    public ProductRecord productToProductRecord() {
+        return productMapper.productToProductRecord(product);
+    }
+
+    @Benchmark
+    public List<ProductRecord> productsToProductRecords(Products products) {
+        return productMapper.productsToProductRecords(products.products);
+    }
+}
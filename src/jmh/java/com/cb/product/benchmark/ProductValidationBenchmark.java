@@ -0,0 +1,54 @@
+package com.cb.product.benchmark;
+
+import com.cb.product.record.ProductRecord;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductValidationBenchmark {
+
+    ValidatorFactory validatorFactory;
+
+    Validator validator;
+
+    ProductRecord valid;
+
+    ProductRecord invalid;
+
+    @Setup
+    public void setup() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+        valid = ProductFixtures.productRecord(0);
+        // every constrained component fails, so message interpolation is part of the measurement
+        invalid = new ProductRecord(null, "", new BigDecimal("-1"), " ", null, null, null,
+                null, null, null, true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<ProductRecord>> validateValid() {
+        return validator.validate(valid);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<ProductRecord>> validateInvalid() {
+        return validator.validate(invalid);
+    }
+}
@@ -1,13 +1,51 @@
 package com.cb.product.config;
 
+import com.cb.product.entity.Product;
+import com.cb.product.repository.ProductWriteBatcher;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.result.UpdateResult;
+import com.mongodb.connection.ConnectionPoolSettings;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.PropertyMapper;
+import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
 import org.springframework.data.mongodb.config.EnableMongoAuditing;
+import org.springframework.data.mongodb.config.EnableReactiveMongoAuditing;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
 import org.springframework.data.mongodb.core.mapping.event.ValidatingMongoEventListener;
 import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@Slf4j
 @Configuration
 @EnableMongoAuditing
+@EnableReactiveMongoAuditing
+@EnableConfigurationProperties(ProductProperties.class)
 public class MongoConfig {
 
     @Bean
@@ -15,4 +53,147 @@ public class MongoConfig {
             final LocalValidatorFactoryBean factory) {
         return new ValidatingMongoEventListener(factory);
     }
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer productMongoSettingsCustomizer(final ProductProperties productProperties) {
+        return builder -> applySettings(productProperties.getMongo(), builder);
+    }
+
+    // reads marked @ProductRead go where ProductReadRouting sends them, everything else as configured
+    @Bean
+    public MongoTemplate mongoTemplate(final MongoDatabaseFactory mongoDatabaseFactory,
+                                       final MongoConverter mongoConverter) {
+        return new MongoTemplate(new ReadRoutingMongoDatabaseFactory(mongoDatabaseFactory), mongoConverter);
+    }
+
+    @Bean
+    public MongoOperationTimeListener mongoOperationTimeListener() {
+        return new MongoOperationTimeListener();
+    }
+
+    // command latency and the pool gauges come from the auto-configured Micrometer listeners
+    @Bean
+    public MongoClientSettingsBuilderCustomizer productMongoMonitoringCustomizer(
+            final ProductProperties productProperties, final ObjectProvider<MeterRegistry> meterRegistry,
+            final MongoOperationTimeListener operationTimeListener) {
+        return builder -> {
+            builder.addCommandListener(operationTimeListener);
+            Duration slowCommandThreshold = productProperties.getMongo().getSlowCommandThreshold();
+            if (slowCommandThreshold != null && slowCommandThreshold.isPositive()) {
+                builder.addCommandListener(new MongoSlowCommandListener(slowCommandThreshold));
+            }
+            meterRegistry.ifAvailable(registry -> builder.applyToConnectionPoolSettings(settings ->
+                    settings.addConnectionPoolListener(new MongoPoolMetricsListener(registry))));
+        };
+    }
+
+    // runs once every singleton exists, which is before the web server starts its connectors: an ApplicationRunner
+    // would only run after the server already takes traffic, against collections without their indexes
+    @Bean
+    public SmartInitializingSingleton productIndexInitializer(final MongoTemplate mongoTemplate,
+                                                              final MongoMappingContext mappingContext) {
+        return () -> ensureIndexes(mongoTemplate, mappingContext, Product.class);
+    }
+
+    // keys expire at their expiresOn, so a changed ttl applies to new keys without touching the index
+    @Bean
+    public SmartInitializingSingleton productIdempotencyIndexInitializer(final MongoTemplate mongoTemplate,
+                                                                         final ProductProperties productProperties) {
+        return () -> mongoTemplate.indexOps(productProperties.getIdempotency().getCollection())
+                .ensureIndex(new Index().on("expiresOn", Sort.Direction.ASC).expire(Duration.ZERO).named("expiresOn_ttl"));
+    }
+
+    // a one-off: turn it on for a single start after upgrading from string prices, then off again
+    @Bean
+    @ConditionalOnProperty(prefix = "product.mongo", name = "migrate-prices")
+    public SmartInitializingSingleton productPriceMigration(final MongoTemplate mongoTemplate) {
+        return () -> migratePrices(mongoTemplate);
+    }
+
+    // a one-off as well: products saved before active was stamped on every insert have no active field, and the live
+    // reads and their partial indexes only see active: true
+    @Bean
+    @ConditionalOnProperty(prefix = "product.mongo", name = "migrate-active")
+    public SmartInitializingSingleton productActiveMigration(final MongoTemplate mongoTemplate) {
+        return () -> migrateActive(mongoTemplate);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "product.cache-invalidation", name = "enabled")
+    public ProductCacheInvalidator productCacheInvalidator(final MongoTemplate mongoTemplate,
+                                                           final CacheManager cacheManager,
+                                                           final ProductProperties productProperties) {
+        return new ProductCacheInvalidator(mongoTemplate, cacheManager, productProperties.getCacheInvalidation());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "product.write-batch", name = "enabled")
+    public ProductWriteBatcher productWriteBatcher(final MongoTemplate mongoTemplate,
+                                                   final LocalValidatorFactoryBean validator,
+                                                   final ProductProperties productProperties) {
+        return new ProductWriteBatcher(mongoTemplate, validator, productProperties.getWriteBatch());
+    }
+
+    // prices used to be written as strings; no index covers the $type filter, so this scans the whole collection
+    static void migratePrices(MongoTemplate mongoTemplate) {
+        UpdateResult result = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Product.class))
+                .updateMany(Filters.type("price", BsonType.STRING),
+                        List.of(Updates.set("price", new Document("$toDecimal", "$price"))));
+        if (result.getModifiedCount() > 0) {
+            log.info("Converted {} string prices to Decimal128", result.getModifiedCount());
+        }
+    }
+
+    // like migratePrices no index covers the filter, so this scans the whole collection
+    static void migrateActive(MongoTemplate mongoTemplate) {
+        UpdateResult result = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Product.class))
+                .updateMany(Filters.exists("active", false), Updates.set("active", true));
+        if (result.getModifiedCount() > 0) {
+            log.info("Marked {} products without an active field as active", result.getModifiedCount());
+        }
+    }
+
+    static void ensureIndexes(MongoTemplate mongoTemplate, MongoMappingContext mappingContext, Class<?> entityType) {
+        IndexOperations indexOps = mongoTemplate.indexOps(entityType);
+        List<String> declared = new ArrayList<>();
+        // ensureIndex is idempotent, but fails if an index of the same name exists with different options
+        IndexResolver.create(mappingContext).resolveIndexFor(entityType)
+                .forEach(indexDefinition -> declared.add(indexOps.ensureIndex(indexDefinition)));
+        Set<String> existing = indexOps.getIndexInfo().stream()
+                .map(IndexInfo::getName)
+                .collect(Collectors.toSet());
+        List<String> missing = declared.stream()
+                .filter(name -> !existing.contains(name))
+                .toList();
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("Indexes " + missing + " missing on collection ["
+                    + mongoTemplate.getCollectionName(entityType) + "]");
+        }
+    }
+
+    static void applySettings(ProductProperties.Mongo mongo, MongoClientSettings.Builder builder) {
+        PropertyMapper map = PropertyMapper.get().alwaysApplyingWhenNonNull();
+        builder.applyToConnectionPoolSettings(settings -> applyPool(mongo.getPool(), settings));
+        builder.applyToSocketSettings(settings -> {
+            map.from(mongo::getConnectTimeout).as(Duration::toMillis).as(Math::toIntExact)
+                    .to(connectTimeout -> settings.connectTimeout(connectTimeout, TimeUnit.MILLISECONDS));
+            map.from(mongo::getReadTimeout).as(Duration::toMillis).as(Math::toIntExact)
+                    .to(readTimeout -> settings.readTimeout(readTimeout, TimeUnit.MILLISECONDS));
+        });
+        builder.applyToClusterSettings(settings -> map.from(mongo::getServerSelectionTimeout).as(Duration::toMillis)
+                .to(timeout -> settings.serverSelectionTimeout(timeout, TimeUnit.MILLISECONDS)));
+    }
+
+    static void applyPool(ProductProperties.Pool pool, ConnectionPoolSettings.Builder settings) {
+        PropertyMapper map = PropertyMapper.get().alwaysApplyingWhenNonNull();
+        map.from(pool::getMaxSize).to(settings::maxSize);
+        map.from(pool::getMinSize).to(settings::minSize);
+        map.from(pool::getMaxConnecting).to(settings::maxConnecting);
+        map.from(pool::getMaxWaitTime).as(Duration::toMillis)
+                .to(maxWaitTime -> settings.maxWaitTime(maxWaitTime, TimeUnit.MILLISECONDS));
+        map.from(pool::getMaxConnectionIdleTime).as(Duration::toMillis)
+                .to(idleTime -> settings.maxConnectionIdleTime(idleTime, TimeUnit.MILLISECONDS));
+        map.from(pool::getMaxConnectionLifeTime).as(Duration::toMillis)
+                .to(lifeTime -> settings.maxConnectionLifeTime(lifeTime, TimeUnit.MILLISECONDS));
+    }
 }
@@ -0,0 +1,35 @@
+package com.cb.product.config;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps the latest operationTime a write came back with. Any time at least as late as the client's own write will do
+// for its read-after token, so one value per node is enough, also for writes the batcher ran on another thread.
+// Standalone servers report no operationTime, there is nothing to read from a secondary anyway.
+class MongoOperationTimeListener implements CommandListener {
+
+    static final Set<String> WRITES = Set.of("insert", "update", "delete", "findAndModify");
+
+    final AtomicLong operationTime = new AtomicLong();
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        if (!WRITES.contains(event.getCommandName())) {
+            return;
+        }
+        BsonValue time = event.getResponse().get("operationTime");
+        if (time != null && time.isTimestamp()) {
+            operationTime.accumulateAndGet(time.asTimestamp().getValue(), Math::max);
+        }
+    }
+
+    BsonTimestamp operationTime() {
+        long time = operationTime.get();
+        return time == 0 ? null : new BsonTimestamp(time);
+    }
+}
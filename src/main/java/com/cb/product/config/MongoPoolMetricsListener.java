@@ -0,0 +1,71 @@
+package com.cb.product.config;
+
+import com.mongodb.connection.ConnectionPoolSettings;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolClosedEvent;
+import com.mongodb.event.ConnectionPoolCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Adds what the auto-configured pool gauges (size, checkedout, waitqueuesize) leave out: how long a checkout
+// waited, why it failed and the pool's max size, so checkedout / maxsize gives the saturation.
+class MongoPoolMetricsListener implements ConnectionPoolListener {
+
+    final MeterRegistry meterRegistry;
+
+    final Meter.MeterProvider<Timer> checkoutTimer;
+
+    final Map<ServerId, Meter> maxSizeGauges = new ConcurrentHashMap<>();
+
+    MongoPoolMetricsListener(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        checkoutTimer = Timer.builder("mongodb.driver.pool.checkout")
+                .description("Time spent waiting for a pooled connection")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+    }
+
+    @Override
+    public void connectionPoolCreated(ConnectionPoolCreatedEvent event) {
+        maxSizeGauges.put(event.getServerId(), Gauge.builder("mongodb.driver.pool.maxsize", event.getSettings(),
+                        ConnectionPoolSettings::getMaxSize)
+                .description("The maximum number of connections in the pool")
+                .tags(tags(event.getServerId()))
+                .register(meterRegistry));
+    }
+
+    @Override
+    public void connectionPoolClosed(ConnectionPoolClosedEvent event) {
+        Meter gauge = maxSizeGauges.remove(event.getServerId());
+        if (gauge != null) {
+            meterRegistry.remove(gauge);
+        }
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        checkoutTimer.withTags(tags(event.getConnectionId().getServerId()).and("outcome", "SUCCESS"))
+                .record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        checkoutTimer.withTags(tags(event.getServerId()).and("outcome", event.getReason().name()))
+                .record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    static Tags tags(ServerId serverId) {
+        return Tags.of("cluster.id", serverId.getClusterId().getValue(),
+                "server.address", serverId.getAddress().toString());
+    }
+}
@@ -0,0 +1,57 @@
+package com.cb.product.config;
+
+import com.mongodb.event.CommandEvent;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonValue;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Logs every Mongo command that took at least the threshold. Only the collection is kept from the started event,
+// the command document may hold product data and is only valid inside the callback anyway.
+@Slf4j
+class MongoSlowCommandListener implements CommandListener {
+
+    final long thresholdNanos;
+
+    final Map<Integer, String> collections = new ConcurrentHashMap<>();
+
+    MongoSlowCommandListener(Duration threshold) {
+        this.thresholdNanos = threshold.toNanos();
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        String key = "getMore".equals(event.getCommandName()) ? "collection" : event.getCommandName();
+        BsonValue collection = event.getCommand().get(key);
+        if (collection != null && collection.isString()) {
+            collections.put(event.getRequestId(), collection.asString().getValue());
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        logIfSlow(event, event.getElapsedTime(TimeUnit.NANOSECONDS), "succeeded");
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        logIfSlow(event, event.getElapsedTime(TimeUnit.NANOSECONDS), "failed");
+    }
+
+    void logIfSlow(CommandEvent event, long elapsedNanos, String outcome) {
+        String collection = collections.remove(event.getRequestId());
+        if (elapsedNanos >= thresholdNanos) {
+            log.warn("Slow Mongo command {} on {}.{} {} after {} ms (server {}, operation {})",
+                    event.getCommandName(), event.getDatabaseName(), collection == null ? "" : collection, outcome,
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    event.getConnectionDescription().getServerAddress(), event.getOperationId());
+        }
+    }
+}
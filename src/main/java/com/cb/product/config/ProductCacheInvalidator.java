@@ -0,0 +1,222 @@
+package com.cb.product.config;
+
+import com.cb.product.entity.Product;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Follows the change stream of the product collection and evicts every product another node or a batch job wrote, so
+// the local cache can keep long TTLs. The resume token is saved under the listener id, a restarted listener carries
+// on from there instead of from "now". Change streams need a replica set, a single node one is enough.
+@Slf4j
+class ProductCacheInvalidator implements SmartLifecycle {
+
+    // ChangeStreamHistoryLost and ChangeStreamFatalError, the token is no longer in the oplog
+    static final Set<Integer> HISTORY_LOST = Set.of(280, 286);
+
+    static final Codec<Document> ID_CODEC = MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+
+    static final Set<OperationType> DOCUMENT_CHANGES = Set.of(OperationType.INSERT, OperationType.UPDATE,
+            OperationType.REPLACE, OperationType.DELETE);
+
+    final MongoTemplate mongoTemplate;
+    final CacheManager cacheManager;
+    final ProductProperties.CacheInvalidation properties;
+
+    volatile boolean running;
+    volatile Thread thread;
+    BsonDocument resumeToken;
+    BsonDocument savedToken;
+    Instant tokenSavedAt = Instant.MIN;
+
+    ProductCacheInvalidator(MongoTemplate mongoTemplate, CacheManager cacheManager,
+                            ProductProperties.CacheInvalidation properties) {
+        this.mongoTemplate = mongoTemplate;
+        this.cacheManager = cacheManager;
+        this.properties = properties;
+    }
+
+    @Override
+    public void start() {
+        resumeToken = loadToken();
+        savedToken = resumeToken;
+        running = true;
+        thread = Thread.ofPlatform().daemon().name("product-cache-invalidator").start(this::listen);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Thread listener = thread;
+        if (listener != null) {
+            try {
+                // the cursor wakes up at least every maxAwaitTime to look at the flag
+                listener.join(properties.getMaxAwaitTime().multipliedBy(2).toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    void listen() {
+        while (running) {
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = watch().cursor()) {
+                log.info("Following changes to [{}] {}", collectionName(),
+                        resumeToken == null ? "from now" : "from the saved resume token");
+                while (running) {
+                    ChangeStreamDocument<Document> change = cursor.tryNext();
+                    if (change != null && !apply(change)) {
+                        break;
+                    }
+                    // an idle stream still moves its token forward
+                    if (cursor.getResumeToken() != null) {
+                        resumeToken = cursor.getResumeToken();
+                    }
+                    saveToken(false);
+                }
+            } catch (MongoCommandException e) {
+                if (!HISTORY_LOST.contains(e.getErrorCode())) {
+                    retry(e);
+                    continue;
+                }
+                // whatever happened in between is unknown, so nothing cached can be trusted
+                log.warn("Resume token for [{}] fell off the oplog, clearing the product cache", collectionName());
+                clearCache();
+                resumeToken = null;
+            } catch (MongoException e) {
+                // the driver already resumed once on its own, so this is a real outage
+                retry(e);
+            } catch (RuntimeException e) {
+                // an event that could not be applied must not end the listener for good, its token is already taken
+                // so the stream reopens after it
+                retry(e);
+            }
+        }
+        saveToken(true);
+    }
+
+    ChangeStreamIterable<Document> watch() {
+        ChangeStreamIterable<Document> changes = collection().watch(List.of(
+                        Aggregates.project(Projections.include("operationType", "documentKey"))))
+                .maxAwaitTime(properties.getMaxAwaitTime().toMillis(), TimeUnit.MILLISECONDS);
+        return resumeToken == null ? changes : changes.startAfter(resumeToken);
+    }
+
+    // false once the stream is invalidated (collection dropped or renamed) and has to be opened again
+    boolean apply(ChangeStreamDocument<Document> change) {
+        resumeToken = change.getResumeToken();
+        if (DOCUMENT_CHANGES.contains(change.getOperationType())) {
+            BsonValue id = change.getDocumentKey() == null ? null : change.getDocumentKey().get("_id");
+            Cache cache = cacheManager.getCache(CacheConfig.PRODUCT_CACHE);
+            if (id != null && cache != null) {
+                cache.evict(cacheKey(id));
+            }
+            return true;
+        }
+        clearCache();
+        return change.getOperationType() != OperationType.INVALIDATE;
+    }
+
+    // the id the way the String id of Product reads it back, which is the key it was cached under: an ObjectId as
+    // its hex string, anything else as the string of its Java value
+    static String cacheKey(BsonValue id) {
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        if (id.isString()) {
+            return id.asString().getValue();
+        }
+        return String.valueOf(ID_CODEC.decode(new BsonDocumentReader(new BsonDocument("_id", id)),
+                DecoderContext.builder().build()).get("_id"));
+    }
+
+    void clearCache() {
+        Cache cache = cacheManager.getCache(CacheConfig.PRODUCT_CACHE);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    void retry(RuntimeException e) {
+        if (!running) {
+            return;
+        }
+        // reopened from the last token, so the changes made in the meantime are still seen
+        log.warn("Change stream on [{}] failed, reopening in {}", collectionName(), properties.getRetryDelay(), e);
+        try {
+            Thread.sleep(properties.getRetryDelay());
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    BsonDocument loadToken() {
+        BsonDocument saved = tokens().find(Filters.eq("_id", properties.getListenerId())).first();
+        return saved == null ? null : saved.getDocument("token");
+    }
+
+    // a write per event would double the load of a busy collection, so the token is saved at most once an interval
+    void saveToken(boolean force) {
+        Instant now = Instant.now();
+        if (resumeToken == null || resumeToken.equals(savedToken)
+                || (!force && now.isBefore(tokenSavedAt.plus(properties.getTokenSaveInterval())))) {
+            return;
+        }
+        try {
+            tokens().replaceOne(Filters.eq("_id", properties.getListenerId()),
+                    new BsonDocument("_id", new BsonString(properties.getListenerId()))
+                            .append("token", resumeToken)
+                            .append("savedOn", new BsonDateTime(now.toEpochMilli())),
+                    new ReplaceOptions().upsert(true));
+            savedToken = resumeToken;
+            tokenSavedAt = now;
+        } catch (RuntimeException e) {
+            log.warn("Could not save the resume token for [{}]", collectionName(), e);
+        }
+    }
+
+    MongoCollection<Document> collection() {
+        return mongoTemplate.getCollection(collectionName());
+    }
+
+    MongoCollection<BsonDocument> tokens() {
+        return mongoTemplate.getCollection(properties.getTokenCollection()).withDocumentClass(BsonDocument.class);
+    }
+
+    String collectionName() {
+        return mongoTemplate.getCollectionName(Product.class);
+    }
+}
@@ -0,0 +1,242 @@
+package com.cb.product.config;
+
+import com.cb.product.exception.FieldValidationException;
+import com.cb.product.exception.InvalidRequestException;
+import com.cb.product.exception.RecordNotFoundException;
+import com.cb.product.record.ProductBatchRecord;
+import com.cb.product.record.ProductChangesRecord;
+import com.cb.product.record.ProductPageRecord;
+import com.cb.product.repository.ReactiveProductRepository;
+import com.cb.product.service.ReactiveProductService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.validation.ConstraintViolationException;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Times every ProductService, repository and mapper call, tagged by outcome, and records how many products list and
+// export calls return. Streams, Monos and Fluxes are timed until they complete, not until they are handed out.
+// Ordered before the cache advice (lowest precedence) so cache hits show up in the service timer.
+@Aspect
+@Component
+@Order(0)
+public class ProductMetrics {
+
+    static final String SUCCESS = "SUCCESS";
+    static final String CANCELLED = "CANCELLED";
+
+    final Meter.MeterProvider<Timer> serviceTimer;
+    final Meter.MeterProvider<Timer> repositoryTimer;
+    final Meter.MeterProvider<Timer> mapperTimer;
+    final Meter.MeterProvider<DistributionSummary> resultSize;
+    final MeterRegistry meterRegistry;
+
+    public ProductMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        serviceTimer = Timer.builder("product.service")
+                .description("ProductService calls")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+        repositoryTimer = Timer.builder("product.repository")
+                .description("Product repository calls, including the time spent in Mongo")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+        mapperTimer = Timer.builder("product.mapper")
+                .description("ProductMapper conversions")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+        resultSize = DistributionSummary.builder("product.service.results")
+                .description("Products returned by ProductService list and export calls")
+                .baseUnit("products")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+    }
+
+    @Pointcut("!execution(* java.lang.Object.*(..))")
+    void notObjectMethod() {
+    }
+
+    @Around("notObjectMethod() && (execution(* com.cb.product.service.ProductService+.*(..)) "
+            + "|| execution(* com.cb.product.service.ReactiveProductService+.*(..)))")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        String type = joinPoint.getThis() instanceof ReactiveProductService ? "ReactiveProductService" : "ProductService";
+        return time(joinPoint, serviceTimer, type, true);
+    }
+
+    @Around("notObjectMethod() && (execution(* com.cb.product.repository.ProductRepository+.*(..)) "
+            + "|| execution(* com.cb.product.repository.ReactiveProductRepository+.*(..)))")
+    public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        String type = joinPoint.getThis() instanceof ReactiveProductRepository ? "ReactiveProductRepository"
+                : "ProductRepository";
+        return time(joinPoint, repositoryTimer, type, false);
+    }
+
+    // mapping a Stream or Flux only sets up the per element conversion; the service call already times the export
+    @Around("notObjectMethod() && execution(* com.cb.product.mapper.ProductMapper+.*(..))")
+    public Object timeMapper(ProceedingJoinPoint joinPoint) throws Throwable {
+        Class<?> returnType = ((MethodSignature) joinPoint.getSignature()).getReturnType();
+        if (Stream.class.isAssignableFrom(returnType) || Flux.class.isAssignableFrom(returnType)) {
+            return joinPoint.proceed();
+        }
+        return time(joinPoint, mapperTimer, "ProductMapper", false);
+    }
+
+    Object time(ProceedingJoinPoint joinPoint, Meter.MeterProvider<Timer> timer, String type, boolean recordSize)
+            throws Throwable {
+        String method = joinPoint.getSignature().getName();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Object result;
+        try {
+            result = joinPoint.proceed();
+        } catch (Throwable e) {
+            sample.stop(timer.withTags("class", type, "method", method, "outcome", outcome(e)));
+            throw e;
+        }
+        if (result instanceof Stream<?> stream) {
+            return timeStream(stream, sample, timer, type, method, recordSize);
+        }
+        if (result instanceof Mono<?> mono) {
+            return timeMono(mono, timer, type, method, recordSize);
+        }
+        if (result instanceof Flux<?> flux) {
+            return timeFlux(flux, timer, type, method, recordSize);
+        }
+        sample.stop(timer.withTags("class", type, "method", method, "outcome", SUCCESS));
+        if (recordSize) {
+            recordSize(type, method, result);
+        }
+        return result;
+    }
+
+    // the outcome is how the stream ended by the time it is closed: read to the end, failed, or closed early
+    Stream<?> timeStream(Stream<?> stream, Timer.Sample sample, Meter.MeterProvider<Timer> timer, String type,
+                         String method, boolean recordSize) {
+        Termination<?> termination = new Termination<>(stream.spliterator());
+        return StreamSupport.stream(termination, false).onClose(stream::close).onClose(() -> {
+            String outcome = termination.error != null ? outcome(termination.error)
+                    : termination.exhausted ? SUCCESS : CANCELLED;
+            sample.stop(timer.withTags("class", type, "method", method, "outcome", outcome));
+            if (recordSize && termination.exhausted) {
+                resultSize.withTags("class", type, "method", method).record(termination.count);
+            }
+        });
+    }
+
+    Mono<?> timeMono(Mono<?> mono, Meter.MeterProvider<Timer> timer, String type, String method, boolean recordSize) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return mono
+                    .doOnSuccess(value -> {
+                        sample.stop(timer.withTags("class", type, "method", method, "outcome", SUCCESS));
+                        if (recordSize) {
+                            recordSize(type, method, value);
+                        }
+                    })
+                    .doOnError(e -> sample.stop(timer.withTags("class", type, "method", method, "outcome", outcome(e))))
+                    .doOnCancel(() -> sample.stop(timer.withTags("class", type, "method", method, "outcome", CANCELLED)));
+        });
+    }
+
+    Flux<?> timeFlux(Flux<?> flux, Meter.MeterProvider<Timer> timer, String type, String method, boolean recordSize) {
+        return Flux.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            AtomicLong count = new AtomicLong();
+            return flux
+                    .doOnNext(element -> count.incrementAndGet())
+                    .doOnComplete(() -> {
+                        sample.stop(timer.withTags("class", type, "method", method, "outcome", SUCCESS));
+                        if (recordSize) {
+                            resultSize.withTags("class", type, "method", method).record(count.get());
+                        }
+                    })
+                    .doOnError(e -> sample.stop(timer.withTags("class", type, "method", method, "outcome", outcome(e))))
+                    .doOnCancel(() -> sample.stop(timer.withTags("class", type, "method", method, "outcome", CANCELLED)));
+        });
+    }
+
+    void recordSize(String type, String method, Object result) {
+        if (result instanceof Collection<?> collection) {
+            resultSize.withTags("class", type, "method", method).record(collection.size());
+        } else if (result instanceof ProductPageRecord page) {
+            resultSize.withTags("class", type, "method", method).record(page.products().size());
+        } else if (result instanceof ProductBatchRecord batch) {
+            resultSize.withTags("class", type, "method", method).record(batch.products().size());
+        } else if (result instanceof ProductChangesRecord changes) {
+            resultSize.withTags("class", type, "method", method).record(changes.changes().size());
+        }
+    }
+
+    static final class Termination<T> implements Spliterator<T> {
+
+        final Spliterator<T> delegate;
+        long count;
+        boolean exhausted;
+        Throwable error;
+
+        Termination(Spliterator<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            try {
+                boolean advanced = delegate.tryAdvance(action);
+                if (advanced) {
+                    count++;
+                } else {
+                    exhausted = true;
+                }
+                return advanced;
+            } catch (RuntimeException | Error e) {
+                error = e;
+                throw e;
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return delegate.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return delegate.characteristics() & ~(SIZED | SUBSIZED);
+        }
+    }
+
+    static String outcome(Throwable e) {
+        if (e instanceof RecordNotFoundException) {
+            return "NOT_FOUND";
+        }
+        if (e instanceof OptimisticLockingFailureException) {
+            return "CONFLICT";
+        }
+        if (e instanceof InvalidRequestException || e instanceof FieldValidationException
+                || e instanceof ConstraintViolationException) {
+            return "CLIENT_ERROR";
+        }
+        return "ERROR";
+    }
+}
@@ -0,0 +1,140 @@
+package com.cb.product.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "product")
+public class ProductProperties {
+
+    private Page page = new Page();
+
+    private Bulk bulk = new Bulk();
+
+    private Mongo mongo = new Mongo();
+
+    private CacheInvalidation cacheInvalidation = new CacheInvalidation();
+
+    private Sync sync = new Sync();
+
+    private WriteBatch writeBatch = new WriteBatch();
+
+    private Reads reads = new Reads();
+
+    private Idempotency idempotency = new Idempotency();
+
+    @Data
+    public static class Page {
+        private int defaultSize = 50;
+        private int maxSize = 500;
+        // search pages by offset, so deep pages get slower; past this a client has to narrow its filters
+        private int maxOffset = 10000;
+    }
+
+    @Data
+    public static class Bulk {
+        private int chunkSize = 500;
+        private int maxSize = 10000;
+    }
+
+    // unset timeouts and pool values keep the driver defaults
+    @Data
+    public static class Mongo {
+        private Pool pool = new Pool();
+        private Duration connectTimeout;
+        private Duration readTimeout;
+        private Duration serverSelectionTimeout;
+        // commands at least this slow are logged, zero turns the log off
+        private Duration slowCommandThreshold = Duration.ofMillis(100);
+        // converts prices stored as strings to Decimal128 on start, see MongoConfig.migratePrices
+        private boolean migratePrices = false;
+        // marks products saved without an active field as active on start, see MongoConfig.migrateActive
+        private boolean migrateActive = false;
+    }
+
+    @Data
+    public static class Sync {
+        // changes younger than this are held back: a write stamped earlier may still be in flight, and node clocks
+        // drift, so handing them out could move a client's watermark past a change it never saw
+        private Duration settleTime = Duration.ofSeconds(5);
+    }
+
+    // see ProductIdempotencyServiceImpl
+    @Data
+    public static class Idempotency {
+        private String collection = "CB_PRODUCT_IDEMPOTENCY";
+        // how long a key and its response are kept around for retries
+        private Duration ttl = Duration.ofHours(24);
+        // how long a duplicate waits for the request that holds its key before it gets a 409
+        private Duration waitTimeout = Duration.ofSeconds(10);
+        // a key held longer than this belongs to a request that died, the next retry takes it over
+        private Duration lockTimeout = Duration.ofSeconds(30);
+    }
+
+    public enum ReadTarget {
+        PRIMARY,
+        PRIMARY_PREFERRED,
+        SECONDARY,
+        SECONDARY_PREFERRED,
+        NEAREST
+    }
+
+    // where each kind of ProductService read goes, see ProductReadRouting
+    @Data
+    public static class Reads {
+        private ReadTarget get = ReadTarget.PRIMARY;
+        private ReadTarget batch = ReadTarget.PRIMARY;
+        private ReadTarget list = ReadTarget.SECONDARY_PREFERRED;
+        private ReadTarget search = ReadTarget.SECONDARY_PREFERRED;
+        private ReadTarget export = ReadTarget.SECONDARY_PREFERRED;
+        // a secondary lagging behind the settle time would let a sync client step over changes it never saw
+        private ReadTarget changes = ReadTarget.PRIMARY;
+        // secondaries further behind than this are not read from; unset leaves lag unbounded, at least 90s otherwise
+        private Duration maxStaleness;
+
+        public ReadTarget target(ProductRead.Operation operation) {
+            return switch (operation) {
+                case GET -> get;
+                case BATCH -> batch;
+                case LIST -> list;
+                case SEARCH -> search;
+                case EXPORT -> export;
+                case CHANGES -> changes;
+            };
+        }
+    }
+
+    // see ProductWriteBatcher; a write waits at most maxDelay for others to share its round trip
+    @Data
+    public static class WriteBatch {
+        private boolean enabled = false;
+        private int maxSize = 100;
+        private Duration maxDelay = Duration.ofMillis(2);
+    }
+
+    // needs a replica set, see ProductCacheInvalidator
+    @Data
+    public static class CacheInvalidation {
+        private boolean enabled = false;
+        // the resume token is saved under this id, nodes of the same deployment share it
+        private String listenerId = "product-service";
+        private String tokenCollection = "CB_PRODUCT_CHANGE_TOKEN";
+        // how long a getMore waits for changes, and so how long stopping the listener can take
+        private Duration maxAwaitTime = Duration.ofSeconds(1);
+        private Duration tokenSaveInterval = Duration.ofSeconds(10);
+        private Duration retryDelay = Duration.ofSeconds(5);
+    }
+
+    @Data
+    public static class Pool {
+        private Integer maxSize;
+        private Integer minSize;
+        private Integer maxConnecting;
+        // how long a request may wait in the checkout queue for a connection
+        private Duration maxWaitTime;
+        private Duration maxConnectionIdleTime;
+        private Duration maxConnectionLifeTime;
+    }
+}
@@ -0,0 +1,23 @@
+package com.cb.product.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Marks a ProductService read; ProductReadRouting sends it wherever product.reads sends that kind of read
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ProductRead {
+
+    Operation value();
+
+    enum Operation {
+        GET,
+        BATCH,
+        LIST,
+        SEARCH,
+        EXPORT,
+        CHANGES
+    }
+}
@@ -0,0 +1,133 @@
+package com.cb.product.config;
+
+import com.cb.product.exception.InvalidRequestException;
+import com.mongodb.ClientSessionOptions;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.ClientSession;
+import jakarta.servlet.http.HttpServletResponse;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.bson.BsonTimestamp;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Sends every @ProductRead to the read preference product.reads has for its kind of read. Writes hand the client a
+// read-after token; a read that brings it back, and may go to a secondary, runs in a causally consistent session
+// advanced to that time, so the secondary waits until it has the client's write. Only the blocking service is routed,
+// the route lives on the calling thread.
+@Aspect
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ProductReadRouting {
+
+    public static final String READ_AFTER_HEADER = "X-Read-After";
+
+    static final ThreadLocal<Route> ROUTE = new ThreadLocal<>();
+
+    record Route(ReadPreference readPreference, ClientSession session) {
+    }
+
+    final ProductProperties productProperties;
+    final MongoDatabaseFactory mongoDatabaseFactory;
+    final MongoOperationTimeListener operationTimeListener;
+
+    public ProductReadRouting(ProductProperties productProperties, MongoDatabaseFactory mongoDatabaseFactory,
+                              MongoOperationTimeListener operationTimeListener) {
+        this.productProperties = productProperties;
+        this.mongoDatabaseFactory = mongoDatabaseFactory;
+        this.operationTimeListener = operationTimeListener;
+    }
+
+    static Route current() {
+        return ROUTE.get();
+    }
+
+    @Around("execution(* com.cb.product.service.ProductService+.*(..)) && @annotation(productRead)")
+    public Object route(ProceedingJoinPoint joinPoint, ProductRead productRead) throws Throwable {
+        if (ROUTE.get() != null) {
+            // a read calling another keeps the outer route and session
+            return joinPoint.proceed();
+        }
+        ProductProperties.Reads reads = productProperties.getReads();
+        ReadPreference readPreference = readPreference(reads.target(productRead.value()), reads.getMaxStaleness());
+        BsonTimestamp readAfter = readPreference.isSecondaryOk() ? readAfter() : null;
+        ClientSession session = readAfter == null ? null : causalSession(readAfter);
+        ROUTE.set(new Route(readPreference, session));
+        boolean streaming = false;
+        try {
+            Object result = joinPoint.proceed();
+            if (session != null && result instanceof Stream<?> stream) {
+                // the cursor keeps reading in the session until the stream is closed
+                streaming = true;
+                return stream.onClose(session::close);
+            }
+            return result;
+        } finally {
+            ROUTE.remove();
+            if (session != null && !streaming) {
+                session.close();
+            }
+        }
+    }
+
+    @AfterReturning("execution(* com.cb.product.service.ProductService+.*(..)) "
+            + "&& !execution(* java.lang.Object.*(..)) && !@annotation(com.cb.product.config.ProductRead)")
+    public void issueReadAfter() {
+        BsonTimestamp operationTime = operationTimeListener.operationTime();
+        if (operationTime != null && RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            HttpServletResponse response = attributes.getResponse();
+            if (response != null && !response.isCommitted()) {
+                response.setHeader(READ_AFTER_HEADER, Long.toString(operationTime.getValue()));
+            }
+        }
+    }
+
+    ClientSession causalSession(BsonTimestamp readAfter) {
+        ClientSession session = mongoDatabaseFactory.getSession(ClientSessionOptions.builder()
+                .causallyConsistent(true)
+                .build());
+        session.advanceOperationTime(readAfter);
+        return session;
+    }
+
+    static BsonTimestamp readAfter() {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return null;
+        }
+        String token = attributes.getRequest().getHeader(READ_AFTER_HEADER);
+        if (token == null) {
+            return null;
+        }
+        try {
+            return new BsonTimestamp(Long.parseLong(token));
+        } catch (NumberFormatException e) {
+            throw new InvalidRequestException("Invalid " + READ_AFTER_HEADER + " [" + token + "]");
+        }
+    }
+
+    static ReadPreference readPreference(ProductProperties.ReadTarget target, Duration maxStaleness) {
+        ReadPreference readPreference = switch (target) {
+            case PRIMARY -> ReadPreference.primary();
+            case PRIMARY_PREFERRED -> ReadPreference.primaryPreferred();
+            case SECONDARY -> ReadPreference.secondary();
+            case SECONDARY_PREFERRED -> ReadPreference.secondaryPreferred();
+            case NEAREST -> ReadPreference.nearest();
+        };
+        // the primary is never stale, and the driver rejects a bound on it
+        if (maxStaleness == null || target == ProductProperties.ReadTarget.PRIMARY) {
+            return readPreference;
+        }
+        return ReadPreference.valueOf(readPreference.getName(), List.of(), maxStaleness.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+}
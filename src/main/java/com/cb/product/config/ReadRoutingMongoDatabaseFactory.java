@@ -0,0 +1,60 @@
+package com.cb.product.config;
+
+import com.mongodb.ClientSessionOptions;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoDatabase;
+import org.springframework.dao.support.PersistenceExceptionTranslator;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+
+import java.util.function.Function;
+
+// Hands MongoTemplate the database with the read preference, and bound to the session, of the ProductService read
+// running on this thread; anything else, writes included, gets the database as configured
+class ReadRoutingMongoDatabaseFactory implements MongoDatabaseFactory {
+
+    final MongoDatabaseFactory delegate;
+
+    ReadRoutingMongoDatabaseFactory(MongoDatabaseFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public MongoDatabase getMongoDatabase() {
+        return route(MongoDatabaseFactory::getMongoDatabase);
+    }
+
+    @Override
+    public MongoDatabase getMongoDatabase(String dbName) {
+        return route(factory -> factory.getMongoDatabase(dbName));
+    }
+
+    MongoDatabase route(Function<MongoDatabaseFactory, MongoDatabase> database) {
+        ProductReadRouting.Route route = ProductReadRouting.current();
+        if (route == null) {
+            return database.apply(delegate);
+        }
+        // the session bound database wraps whatever it hands out, so the read preference keeps the session
+        return database.apply(route.session() == null ? delegate : delegate.withSession(route.session()))
+                .withReadPreference(route.readPreference());
+    }
+
+    @Override
+    public PersistenceExceptionTranslator getExceptionTranslator() {
+        return delegate.getExceptionTranslator();
+    }
+
+    @Override
+    public ClientSession getSession(ClientSessionOptions options) {
+        return delegate.getSession(options);
+    }
+
+    @Override
+    public MongoDatabaseFactory withSession(ClientSession session) {
+        return delegate.withSession(session);
+    }
+
+    @Override
+    public boolean isTransactionActive() {
+        return delegate.isTransactionActive();
+    }
+}
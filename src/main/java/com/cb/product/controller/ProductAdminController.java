@@ -0,0 +1,35 @@
+package com.cb.product.controller;
+
+import com.cb.product.record.ProductIndexStatsRecord;
+import com.cb.product.record.ProductQueryPlanRecord;
+import com.cb.product.service.ProductAdminService;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@AllArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequestMapping("/api/v1/admin/product")
+public class ProductAdminController {
+
+    final ProductAdminService productAdminService;
+
+    @GetMapping("/indexes")
+    ResponseEntity<List<ProductIndexStatsRecord>> getIndexStats() {
+        return ResponseEntity.ok(productAdminService.getIndexStats());
+    }
+
+    // executionStats runs each shape, so it is only done when asked for
+    @GetMapping("/query-plans")
+    ResponseEntity<List<ProductQueryPlanRecord>> explainQueries(
+            @RequestParam(defaultValue = "false") boolean executionStats) {
+        return ResponseEntity.ok(productAdminService.explainQueries(executionStats));
+    }
+}
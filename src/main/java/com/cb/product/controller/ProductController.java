@@ -1,42 +1,220 @@
 package com.cb.product.controller;
 
+import com.cb.product.record.ProductBatchRecord;
+import com.cb.product.record.ProductBulkItemRecord;
+import com.cb.product.record.ProductChangesRecord;
+import com.cb.product.record.ProductPageRecord;
 import com.cb.product.record.ProductRecord;
+import com.cb.product.record.ProductSearchRecord;
+import com.cb.product.record.ProductStampRecord;
+import com.cb.product.service.ProductIdempotencyService;
 import com.cb.product.service.ProductService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
 
 @RestController
 @AllArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/v1/product")
 public class ProductController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    static final int EXPORT_FLUSH_INTERVAL = 100;
+
+    static final String EXPORT_INTERCEPTOR_KEY = ProductController.class.getName() + ".export";
+
     final ProductService productService;
 
+    final ProductIdempotencyService productIdempotencyService;
+
+    final ObjectMapper objectMapper;
+
     @PostMapping
-    ResponseEntity<ProductRecord> save(@RequestBody @Valid ProductRecord productRecord) {
-        ProductRecord productRecordChanged = productService.save(productRecord);
-        return new ResponseEntity<>(productRecordChanged, productRecord.id() != null ? HttpStatus.OK : HttpStatus.CREATED);
+    ResponseEntity<ProductRecord> save(@RequestBody @Valid ProductRecord productRecord,
+                                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                       @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                       @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        Long expectedVersion = ProductETags.versionFromIfMatch(ifMatch);
+        ProductRecord productRecordToSave = expectedVersion == null
+                ? productRecord : productRecord.withVersion(expectedVersion);
+        // a retried create with the same key gets the first response back instead of a second product
+        ProductRecord productRecordChanged = idempotencyKey == null
+                ? productService.save(productRecordToSave)
+                : productIdempotencyService.save(idempotencyKey, productRecordToSave);
+        return ResponseEntity.status(productRecord.id() != null ? HttpStatus.OK : HttpStatus.CREATED)
+                .eTag(ProductETags.eTag(productRecordChanged.version(), null, accept))
+                .body(productRecordChanged);
+    }
+
+    @PostMapping("/bulk")
+    ResponseEntity<List<ProductBulkItemRecord>> bulkUpsert(@RequestBody List<ProductRecord> productRecords) {
+        return ResponseEntity.ok(productService.bulkUpsert(productRecords));
+    }
+
+    @PatchMapping("/{id}")
+    ResponseEntity<ProductRecord> patchProduct(@PathVariable String id, @RequestBody Map<String, Object> fields,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                               @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        ProductRecord productRecord = productService.patchProduct(id, fields, ProductETags.versionFromIfMatch(ifMatch));
+        return ResponseEntity.ok()
+                .eTag(ProductETags.eTag(productRecord.version(), null, accept))
+                .body(productRecord);
     }
 
     @GetMapping("/{id}")
-    ResponseEntity<ProductRecord> getProduct(@PathVariable String id) {
-        return ResponseEntity.ok(productService.getProduct(id));
+    ResponseEntity<?> getProduct(@PathVariable String id,
+                                 @RequestParam(defaultValue = "false") boolean includeDeleted,
+                                 @RequestParam(required = false) Set<String> fields,
+                                 WebRequest webRequest) {
+        if (webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                || webRequest.getHeader(HttpHeaders.IF_MODIFIED_SINCE) != null) {
+            // revalidate against a projection of version and updatedOn before loading the full document
+            ProductStampRecord stamp = productService.getProductStamp(id, includeDeleted);
+            String eTag = ProductETags.eTag(stamp.version(), fields, webRequest.getHeader(HttpHeaders.ACCEPT));
+            if (webRequest.checkNotModified(eTag, ProductETags.lastModified(stamp.updatedOn()))) {
+                return null;
+            }
+        }
+        ProductRecord productRecord = fields == null
+                ? productService.getProduct(id, includeDeleted)
+                : productService.getProduct(id, includeDeleted, fields);
+        return ResponseEntity.ok()
+                .eTag(ProductETags.eTag(productRecord.version(), fields, webRequest.getHeader(HttpHeaders.ACCEPT)))
+                .varyBy(HttpHeaders.ACCEPT)
+                .lastModified(ProductETags.lastModified(productRecord.updatedOn()))
+                .body(ProductFields.select(objectMapper, productRecord, fields));
+    }
+
+    // a few hundred ids fill the server's request header limit, larger batches go in a POST body
+    @GetMapping("/batch")
+    ResponseEntity<ProductBatchRecord> getProductsByIds(@RequestParam List<String> ids,
+                                                        @RequestParam(defaultValue = "false") boolean includeDeleted) {
+        return ResponseEntity.ok(productService.getProductsByIds(ids, includeDeleted));
+    }
+
+    @PostMapping("/batch")
+    ResponseEntity<ProductBatchRecord> getProductsByIdsBody(@RequestBody List<String> ids,
+                                                            @RequestParam(defaultValue = "false") boolean includeDeleted) {
+        return ResponseEntity.ok(productService.getProductsByIds(ids, includeDeleted));
+    }
+
+    // incremental sync: pass the token of the previous response back to get what changed since, tombstones included
+    @GetMapping("/changes")
+    ResponseEntity<ProductChangesRecord> getChanges(@RequestParam(required = false) String token,
+                                                    @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(productService.getChanges(token, size));
     }
 
     @GetMapping
-    ResponseEntity<List<ProductRecord>> getAllProduct() {
-        return ResponseEntity.ok(productService.getAllProducts());
+    ResponseEntity<List<?>> getAllProduct(@RequestParam(required = false) String cursor,
+                                          @RequestParam(required = false) Integer size,
+                                          @RequestParam(defaultValue = "false") boolean includeDeleted,
+                                          @RequestParam(required = false) Set<String> fields,
+                                          @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        ProductPageRecord page = fields == null
+                ? productService.getProducts(cursor, size, includeDeleted)
+                : productService.getProducts(cursor, size, includeDeleted, fields);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(ProductETags.eTag(page.products(), page.nextCursor(), fields, accept))
+                .varyBy(HttpHeaders.ACCEPT)
+                .lastModified(ProductETags.lastModified(page.products()));
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response.body(ProductFields.select(objectMapper, page.products(), fields));
+    }
+
+    @GetMapping("/search")
+    ResponseEntity<List<?>> searchProducts(ProductSearchRecord search,
+                                           @RequestParam(required = false) Set<String> fields,
+                                           @RequestParam(required = false) String cursor,
+                                           @RequestParam(required = false) Integer size,
+                                           @RequestParam(defaultValue = "false") boolean includeDeleted) {
+        ProductPageRecord page = productService.searchProducts(search, fields, cursor, size, includeDeleted);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response.body(ProductFields.select(objectMapper, page.products(), fields));
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    ResponseEntity<StreamingResponseBody> exportProducts(@RequestParam(defaultValue = "false") boolean includeDeleted,
+                                                         WebRequest webRequest) {
+        // opened here rather than in the body: the body runs on an async thread, without the request the read
+        // routing takes X-Read-After from, and the cursor keeps the read preference and session it was opened with
+        Stream<ProductRecord> export = productService.exportProducts(includeDeleted);
+        // the body closes it once it ran, a request that timed out, failed or went away before then is closed here
+        WebAsyncUtils.getAsyncManager(webRequest).registerCallableInterceptor(EXPORT_INTERCEPTOR_KEY,
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                        export.close();
+                    }
+                });
+        StreamingResponseBody body = outputStream -> {
+            try (Stream<ProductRecord> products = export) {
+                Iterator<ProductRecord> iterator = products.iterator();
+                int written = 0;
+                while (iterator.hasNext()) {
+                    outputStream.write(objectMapper.writeValueAsBytes(iterator.next()));
+                    outputStream.write('\n');
+                    // push the first line out immediately, then flush in batches
+                    if (++written == 1 || written % EXPORT_FLUSH_INTERVAL == 0) {
+                        outputStream.flush();
+                    }
+                }
+                outputStream.flush();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     @DeleteMapping("/{id}")
-    ResponseEntity<String> deleteProduct(@PathVariable String id) {
-        productService.deleteProduct(id);
+    ResponseEntity<String> deleteProduct(@PathVariable String id,
+                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        productService.deleteProduct(id, ProductETags.versionFromIfMatch(ifMatch));
         return ResponseEntity.ok("Product Deleted with id" + id);
     }
 
+    @DeleteMapping
+    ResponseEntity<String> deleteProducts(@RequestParam List<String> ids) {
+        long deleted = productService.deleteProducts(ids);
+        return ResponseEntity.ok("Products Deleted: " + deleted);
+    }
+
+    @PostMapping("/{id}/restore")
+    ResponseEntity<ProductRecord> restoreProduct(@PathVariable String id,
+                                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                 @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        ProductRecord productRecord = productService.restoreProduct(id, ProductETags.versionFromIfMatch(ifMatch));
+        return ResponseEntity.ok()
+                .eTag(ProductETags.eTag(productRecord.version(), null, accept))
+                .body(productRecord);
+    }
+
 }
@@ -0,0 +1,106 @@
+package com.cb.product.controller;
+
+import com.cb.product.config.CodecConfig;
+import com.cb.product.record.ProductRecord;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+// A product's JSON, Smile and CBOR bodies and each fields= projection are different representations of the same
+// version, so each gets its own tag: "<version>" for the whole product as JSON, with the format and a digest of the
+// field set appended otherwise. If-Match only looks at the version in front.
+final class ProductETags {
+
+    // the order the message converters and codecs are asked in, JSON first
+    private static final List<MediaType> PRODUCIBLE = List.of(MediaType.APPLICATION_JSON, CodecConfig.APPLICATION_SMILE,
+            MediaType.APPLICATION_CBOR);
+
+    private ProductETags() {
+    }
+
+    static String eTag(Long version, Set<String> fields, String accept) {
+        return version == null ? null : "\"" + version + variant(fields, mediaType(accept)) + "\"";
+    }
+
+    static String eTag(List<ProductRecord> productRecords, String nextCursor, Set<String> fields, String accept) {
+        StringBuilder state = new StringBuilder();
+        productRecords.forEach(productRecord -> state.append(productRecord.id()).append(':')
+                .append(productRecord.version()).append(':')
+                .append(lastModified(productRecord.updatedOn())).append(';'));
+        state.append(nextCursor).append(variant(fields, mediaType(accept)));
+        // weak: a page is only ever revalidated with If-None-Match, and Tomcat will not gzip a response with a strong tag
+        return "W/\"" + DigestUtils.md5DigestAsHex(state.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    static long lastModified(LocalDateTime updatedOn) {
+        // LocalDateTime values are written to Mongo in the JVM default zone
+        return updatedOn == null ? -1 : updatedOn.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    static long lastModified(List<ProductRecord> productRecords) {
+        return productRecords.stream()
+                .map(ProductRecord::updatedOn)
+                .filter(Objects::nonNull)
+                .mapToLong(ProductETags::lastModified)
+                .max()
+                .orElse(-1);
+    }
+
+    static Long versionFromIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || "*".equals(ifMatch.trim())) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        // If-Match uses strong comparison, so a weak or malformed tag can never match
+        if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            String opaque = tag.substring(1, tag.length() - 1);
+            int variant = opaque.indexOf('-');
+            try {
+                return Long.valueOf(variant < 0 ? opaque : opaque.substring(0, variant));
+            } catch (NumberFormatException e) {
+                // fall through to the precondition failure below
+            }
+        }
+        throw new OptimisticLockingFailureException("If-Match [" + ifMatch + "] does not match the current product version");
+    }
+
+    // the format content negotiation will pick for this Accept header; anything unusable falls back to JSON
+    static MediaType mediaType(String accept) {
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_JSON;
+        }
+        return accepted.stream()
+                .sorted(Comparator.comparingDouble(MediaType::getQualityValue).reversed()
+                        .thenComparing(MediaType::isWildcardType)
+                        .thenComparing(MediaType::isWildcardSubtype))
+                .flatMap(acceptable -> PRODUCIBLE.stream().filter(acceptable::isCompatibleWith))
+                .findFirst()
+                .orElse(MediaType.APPLICATION_JSON);
+    }
+
+    // field names come straight from the query string, so they go in as a digest rather than verbatim
+    private static String variant(Set<String> fields, MediaType mediaType) {
+        StringBuilder variant = new StringBuilder();
+        if (!MediaType.APPLICATION_JSON.equalsTypeAndSubtype(mediaType)) {
+            variant.append('-').append(mediaType.getSubtype());
+        }
+        if (fields != null && !fields.isEmpty()) {
+            String fieldSet = String.join(",", new TreeSet<>(fields));
+            variant.append('-').append(DigestUtils.md5DigestAsHex(fieldSet.getBytes(StandardCharsets.UTF_8)), 0, 8);
+        }
+        return variant.toString();
+    }
+}
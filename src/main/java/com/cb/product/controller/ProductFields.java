@@ -0,0 +1,38 @@
+package com.cb.product.controller;
+
+import com.cb.product.record.ProductRecord;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// the service only loads the requested fields; this drops the rest from the response instead of sending them as null
+final class ProductFields {
+
+    private static final TypeReference<LinkedHashMap<String, Object>> FIELD_MAP = new TypeReference<>() {
+    };
+
+    private ProductFields() {
+    }
+
+    static List<?> select(ObjectMapper objectMapper, List<ProductRecord> productRecords, Set<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return productRecords;
+        }
+        return productRecords.stream()
+                .map(productRecord -> select(objectMapper, productRecord, fields))
+                .toList();
+    }
+
+    static Object select(ObjectMapper objectMapper, ProductRecord productRecord, Set<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return productRecord;
+        }
+        Map<String, Object> selected = objectMapper.convertValue(productRecord, FIELD_MAP);
+        selected.keySet().removeIf(field -> !field.equals("id") && !fields.contains(field));
+        return selected;
+    }
+}
@@ -0,0 +1,179 @@
+package com.cb.product.controller;
+
+import com.cb.product.record.ProductBatchRecord;
+import com.cb.product.record.ProductBulkItemRecord;
+import com.cb.product.record.ProductChangesRecord;
+import com.cb.product.record.ProductRecord;
+import com.cb.product.record.ProductSearchRecord;
+import com.cb.product.service.ReactiveProductService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Valid;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@RestController
+@AllArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/api/v1/product")
+public class ReactiveProductController {
+
+    final ReactiveProductService reactiveProductService;
+
+    final ObjectMapper objectMapper;
+
+    @PostMapping
+    Mono<ResponseEntity<ProductRecord>> save(@RequestBody @Valid ProductRecord productRecord,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                             @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        Long expectedVersion = ProductETags.versionFromIfMatch(ifMatch);
+        return reactiveProductService.save(expectedVersion == null ? productRecord : productRecord.withVersion(expectedVersion))
+                .map(productRecordChanged -> ResponseEntity.status(productRecord.id() != null ? HttpStatus.OK : HttpStatus.CREATED)
+                        .eTag(ProductETags.eTag(productRecordChanged.version(), null, accept))
+                        .body(productRecordChanged));
+    }
+
+    @PostMapping("/bulk")
+    Mono<ResponseEntity<List<ProductBulkItemRecord>>> bulkUpsert(@RequestBody List<ProductRecord> productRecords) {
+        return reactiveProductService.bulkUpsert(productRecords)
+                .map(ResponseEntity::ok);
+    }
+
+    @PatchMapping("/{id}")
+    Mono<ResponseEntity<ProductRecord>> patchProduct(@PathVariable String id, @RequestBody Map<String, Object> fields,
+                                                     @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                     @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return reactiveProductService.patchProduct(id, fields, ProductETags.versionFromIfMatch(ifMatch))
+                .map(productRecord -> ResponseEntity.ok()
+                        .eTag(ProductETags.eTag(productRecord.version(), null, accept))
+                        .body(productRecord));
+    }
+
+    @GetMapping("/{id}")
+    Mono<ResponseEntity<Object>> getProduct(@PathVariable String id,
+                                            @RequestParam(defaultValue = "false") boolean includeDeleted,
+                                            @RequestParam(required = false) Set<String> fields,
+                                            ServerWebExchange exchange) {
+        HttpHeaders headers = exchange.getRequest().getHeaders();
+        String accept = String.join(",", headers.getOrEmpty(HttpHeaders.ACCEPT));
+        if (headers.getIfNoneMatch().isEmpty() && headers.getIfModifiedSince() < 0) {
+            return readProduct(id, includeDeleted, fields, accept);
+        }
+        // revalidate against a projection of version and updatedOn before loading the full document
+        return reactiveProductService.getProductStamp(id, includeDeleted)
+                .flatMap(stamp -> exchange.checkNotModified(ProductETags.eTag(stamp.version(), fields, accept),
+                        Instant.ofEpochMilli(ProductETags.lastModified(stamp.updatedOn())))
+                        ? Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).build())
+                        : readProduct(id, includeDeleted, fields, accept));
+    }
+
+    // a few hundred ids fill the server's request header limit, larger batches go in a POST body
+    @GetMapping("/batch")
+    Mono<ResponseEntity<ProductBatchRecord>> getProductsByIds(@RequestParam List<String> ids,
+                                                              @RequestParam(defaultValue = "false") boolean includeDeleted) {
+        return reactiveProductService.getProductsByIds(ids, includeDeleted)
+                .map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/batch")
+    Mono<ResponseEntity<ProductBatchRecord>> getProductsByIdsBody(@RequestBody List<String> ids,
+                                                                  @RequestParam(defaultValue = "false") boolean includeDeleted) {
+        return reactiveProductService.getProductsByIds(ids, includeDeleted)
+                .map(ResponseEntity::ok);
+    }
+
+    @GetMapping("/changes")
+    Mono<ResponseEntity<ProductChangesRecord>> getChanges(@RequestParam(required = false) String token,
+                                                          @RequestParam(required = false) Integer size) {
+        return reactiveProductService.getChanges(token, size)
+                .map(ResponseEntity::ok);
+    }
+
+    @GetMapping
+    Mono<ResponseEntity<List<?>>> getAllProduct(@RequestParam(required = false) String cursor,
+                                                @RequestParam(required = false) Integer size,
+                                                @RequestParam(defaultValue = "false") boolean includeDeleted,
+                                                @RequestParam(required = false) Set<String> fields,
+                                                @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return (fields == null
+                ? reactiveProductService.getProducts(cursor, size, includeDeleted)
+                : reactiveProductService.getProducts(cursor, size, includeDeleted, fields))
+                .map(page -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                            .eTag(ProductETags.eTag(page.products(), page.nextCursor(), fields, accept))
+                            .varyBy(HttpHeaders.ACCEPT)
+                            .lastModified(ProductETags.lastModified(page.products()));
+                    if (page.nextCursor() != null) {
+                        response.header(ProductController.NEXT_CURSOR_HEADER, page.nextCursor());
+                    }
+                    return response.body(ProductFields.select(objectMapper, page.products(), fields));
+                });
+    }
+
+    @GetMapping("/search")
+    Mono<ResponseEntity<List<?>>> searchProducts(ProductSearchRecord search,
+                                                 @RequestParam(required = false) Set<String> fields,
+                                                 @RequestParam(required = false) String cursor,
+                                                 @RequestParam(required = false) Integer size,
+                                                 @RequestParam(defaultValue = "false") boolean includeDeleted) {
+        return reactiveProductService.searchProducts(search, fields, cursor, size, includeDeleted)
+                .map(page -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                    if (page.nextCursor() != null) {
+                        response.header(ProductController.NEXT_CURSOR_HEADER, page.nextCursor());
+                    }
+                    return response.body(ProductFields.select(objectMapper, page.products(), fields));
+                });
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    Flux<ProductRecord> exportProducts(@RequestParam(defaultValue = "false") boolean includeDeleted) {
+        return reactiveProductService.exportProducts(includeDeleted);
+    }
+
+    @DeleteMapping("/{id}")
+    Mono<ResponseEntity<String>> deleteProduct(@PathVariable String id,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return reactiveProductService.deleteProduct(id, ProductETags.versionFromIfMatch(ifMatch))
+                .then(Mono.fromSupplier(() -> ResponseEntity.ok("Product Deleted with id" + id)));
+    }
+
+    @DeleteMapping
+    Mono<ResponseEntity<String>> deleteProducts(@RequestParam List<String> ids) {
+        return reactiveProductService.deleteProducts(ids)
+                .map(deleted -> ResponseEntity.ok("Products Deleted: " + deleted));
+    }
+
+    @PostMapping("/{id}/restore")
+    Mono<ResponseEntity<ProductRecord>> restoreProduct(@PathVariable String id,
+                                                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                       @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return reactiveProductService.restoreProduct(id, ProductETags.versionFromIfMatch(ifMatch))
+                .map(productRecord -> ResponseEntity.ok()
+                        .eTag(ProductETags.eTag(productRecord.version(), null, accept))
+                        .body(productRecord));
+    }
+
+    private Mono<ResponseEntity<Object>> readProduct(String id, boolean includeDeleted, Set<String> fields, String accept) {
+        return (fields == null
+                ? reactiveProductService.getProduct(id, includeDeleted)
+                : reactiveProductService.getProduct(id, includeDeleted, fields))
+                .map(productRecord -> ResponseEntity.ok()
+                        .eTag(ProductETags.eTag(productRecord.version(), fields, accept))
+                        .varyBy(HttpHeaders.ACCEPT)
+                        .lastModified(ProductETags.lastModified(productRecord.updatedOn()))
+                        .body(ProductFields.select(objectMapper, productRecord, fields)));
+    }
+}
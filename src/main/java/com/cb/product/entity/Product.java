@@ -9,7 +9,12 @@ import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.TextIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -18,16 +23,25 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document("CB_PRODUCT")
+@CompoundIndex(name = "active_updatedOn", def = "{'active': 1, 'updatedOn': -1}")
+@CompoundIndex(name = "active_name", def = "{'name': 1}", partialFilter = "{'active': true}")
+@CompoundIndex(name = "active_id", def = "{'_id': 1, 'active': 1}", partialFilter = "{'active': true}")
+@CompoundIndex(name = "active_price", def = "{'price': 1}", partialFilter = "{'active': true}")
+@CompoundIndex(name = "updatedOn_id", def = "{'updatedOn': 1, '_id': 1}")
 public class Product {
 
     @Id
     private String id;
     @NotBlank
+    @TextIndexed
     private String name;
     @NotNull
     @Min(0)
+    // stored as a number rather than the default string, so price ranges and sorts compare by value
+    @Field(targetType = FieldType.DECIMAL128)
     private BigDecimal price;
     @NotBlank
+    @TextIndexed
     private String shortDesc;
     private String longDesc;
 
@@ -40,4 +54,13 @@ public class Product {
     private LocalDateTime deletedOn;
 
     private Boolean active;
+
+    @Version
+    private Long version;
+
+    public Product(String id, String name, BigDecimal price, String shortDesc, String longDesc, String thumbnail,
+                   String image, LocalDateTime createdOn, LocalDateTime updatedOn, LocalDateTime deletedOn,
+                   Boolean active) {
+        this(id, name, price, shortDesc, longDesc, thumbnail, image, createdOn, updatedOn, deletedOn, active, null);
+    }
 }
@@ -0,0 +1,16 @@
+package com.cb.product.exception;
+
+import lombok.Getter;
+
+import java.util.Map;
+
+@Getter
+public class FieldValidationException extends RuntimeException{
+
+    private final Map<String, String> errors;
+
+    public FieldValidationException(Map<String, String> errors){
+        super("Invalid fields " + errors.keySet());
+        this.errors = errors;
+    }
+}
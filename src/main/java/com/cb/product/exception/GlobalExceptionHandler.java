@@ -1,5 +1,10 @@
 package com.cb.product.exception;
 
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
@@ -7,6 +12,7 @@ import org.springframework.validation.ObjectError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.bind.support.WebExchangeBindException;
 
 import java.util.List;
 import java.util.Map;
@@ -22,14 +28,76 @@ public class GlobalExceptionHandler {
                 .body(exception.getMessage());
     }
 
+    @ExceptionHandler({OptimisticLockingFailureException.class})
+    public ResponseEntity<Object> handleOptimisticLockingFailureException(OptimisticLockingFailureException exception) {
+        return ResponseEntity
+                .status(HttpStatus.PRECONDITION_FAILED)
+                .body(exception.getMessage());
+    }
+
+    @ExceptionHandler({RequestInProgressException.class})
+    public ResponseEntity<Object> handleRequestInProgressException(RequestInProgressException exception) {
+        return ResponseEntity
+                .status(HttpStatus.CONFLICT)
+                .body(exception.getMessage());
+    }
+
+    @ExceptionHandler({InvalidRequestException.class})
+    public ResponseEntity<Object> handleInvalidRequestException(InvalidRequestException exception) {
+        return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(exception.getMessage());
+    }
+
+    @ExceptionHandler({FieldValidationException.class})
+    public ResponseEntity<Object> handleFieldValidationException(FieldValidationException exception) {
+        return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(exception.getErrors());
+    }
+
     @ExceptionHandler({MethodArgumentNotValidException.class})
     public ResponseEntity<Object> handleMethodArgumentNotValidException(MethodArgumentNotValidException exception) {
-        List<ObjectError> allErrors = exception.getAllErrors();
-        Map<String, String> errorMap = allErrors.stream()
-                .map(FieldError.class::cast)
-                .collect(Collectors.toMap(FieldError::getField, fieldError -> fieldError.getDefaultMessage() == null ? "" : fieldError.getDefaultMessage()));
         return ResponseEntity
                 .status(HttpStatus.BAD_REQUEST)
-                .body(errorMap);
+                .body(toErrorMap(exception.getAllErrors()));
+    }
+
+    @ExceptionHandler({WebExchangeBindException.class})
+    public ResponseEntity<Object> handleWebExchangeBindException(WebExchangeBindException exception) {
+        return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(toErrorMap(exception.getAllErrors()));
+    }
+
+    // the write batcher validates products itself, see ProductWriteBatcher.insert
+    @ExceptionHandler({ConstraintViolationException.class})
+    public ResponseEntity<Object> handleConstraintViolationException(ConstraintViolationException exception) {
+        return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(exception.getConstraintViolations().stream()
+                        .collect(Collectors.toMap(violation -> violation.getPropertyPath().toString(),
+                                ConstraintViolation::getMessage, (first, second) -> first)));
+    }
+
+    @ExceptionHandler({DuplicateKeyException.class})
+    public ResponseEntity<Object> handleDuplicateKeyException(DuplicateKeyException exception) {
+        return ResponseEntity
+                .status(HttpStatus.CONFLICT)
+                .body(exception.getMessage());
+    }
+
+    // a write the database rejected, a failed document validation for one
+    @ExceptionHandler({DataIntegrityViolationException.class})
+    public ResponseEntity<Object> handleDataIntegrityViolationException(DataIntegrityViolationException exception) {
+        return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(exception.getMessage());
+    }
+
+    private static Map<String, String> toErrorMap(List<ObjectError> allErrors) {
+        return allErrors.stream()
+                .map(FieldError.class::cast)
+                .collect(Collectors.toMap(FieldError::getField, fieldError -> fieldError.getDefaultMessage() == null ? "" : fieldError.getDefaultMessage()));
     }
 }
@@ -0,0 +1,8 @@
+package com.cb.product.exception;
+
+public class RequestInProgressException extends RuntimeException{
+
+    public RequestInProgressException(String message){
+        super(message);
+    }
+}
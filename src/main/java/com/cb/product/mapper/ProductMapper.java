@@ -3,15 +3,29 @@ package com.cb.product.mapper;
 import com.cb.product.entity.Product;
 import com.cb.product.record.ProductRecord;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 @Mapper
 public interface ProductMapper {
 
+    // withVersion is the If-Match wither on the record, not a property to map
+    @Mapping(target = "withVersion", ignore = true)
     ProductRecord productToProductRecord(Product product);
 
     List<ProductRecord> productsToProductRecords(List<Product> products);
 
+    // called on the bean, these convert each element on the mapper itself, so an export is not timed per product
+    default Stream<ProductRecord> productStreamToProductRecords(Stream<Product> products) {
+        return products.map(this::productToProductRecord);
+    }
+
+    default Flux<ProductRecord> productFluxToProductRecords(Flux<Product> products) {
+        return products.map(this::productToProductRecord);
+    }
+
     Product productRecordToProduct(ProductRecord productRecord);
 }
@@ -0,0 +1,6 @@
+package com.cb.product.record;
+
+import java.util.List;
+
+public record ProductBatchRecord(List<ProductRecord> products, List<String> missing) {
+}
@@ -0,0 +1,10 @@
+package com.cb.product.record;
+
+import java.util.Map;
+
+public record ProductBulkItemRecord(int index, String id, Status status, Map<String, String> errors) {
+
+    public enum Status {
+        CREATED, UPDATED, FAILED
+    }
+}
@@ -0,0 +1,6 @@
+package com.cb.product.record;
+
+import java.util.List;
+
+public record ProductChangesRecord(List<ProductRecord> changes, String token, boolean more) {
+}
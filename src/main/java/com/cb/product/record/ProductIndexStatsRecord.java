@@ -0,0 +1,7 @@
+package com.cb.product.record;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+public record ProductIndexStatsRecord(String name, Map<String, Object> key, long accesses, LocalDateTime since) {
+}
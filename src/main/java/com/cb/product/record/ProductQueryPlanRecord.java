@@ -0,0 +1,7 @@
+package com.cb.product.record;
+
+import java.util.List;
+
+public record ProductQueryPlanRecord(String query, List<String> stages, List<String> indexes, boolean collectionScan,
+                                     long keysExamined, long docsExamined, long returned) {
+}
@@ -3,11 +3,14 @@ package com.cb.product.record;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
-public record ProductRecord(String id,
+// ids are ObjectIds, so _id has a single BSON type and keyset pages over it see every product
+public record ProductRecord(@Pattern(regexp = "[0-9a-fA-F]{24}", message = "must be a 24 digit hex ObjectId")
+                            String id,
                             @NotBlank
                             String name,
                             @NotNull
@@ -20,5 +23,17 @@ public record ProductRecord(String id,
                             String image,
                             LocalDateTime createdOn,
                             LocalDateTime updatedOn,
-                            LocalDateTime deletedOn, Boolean active) {
+                            LocalDateTime deletedOn, Boolean active,
+                            Long version) {
+
+    public ProductRecord(String id, String name, BigDecimal price, String shortDesc, String longDesc,
+                         String thumbnail, String image, LocalDateTime createdOn, LocalDateTime updatedOn,
+                         LocalDateTime deletedOn, Boolean active) {
+        this(id, name, price, shortDesc, longDesc, thumbnail, image, createdOn, updatedOn, deletedOn, active, null);
+    }
+
+    public ProductRecord withVersion(Long version) {
+        return new ProductRecord(id, name, price, shortDesc, longDesc, thumbnail, image, createdOn, updatedOn,
+                deletedOn, active, version);
+    }
 }
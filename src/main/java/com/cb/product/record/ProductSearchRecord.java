@@ -0,0 +1,23 @@
+package com.cb.product.record;
+
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public record ProductSearchRecord(String name,
+                                  String text,
+                                  BigDecimal minPrice,
+                                  BigDecimal maxPrice,
+                                  Boolean active,
+                                  @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                                  LocalDateTime createdFrom,
+                                  @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                                  LocalDateTime createdTo,
+                                  @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                                  LocalDateTime updatedFrom,
+                                  @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                                  LocalDateTime updatedTo,
+                                  List<String> sort) {
+}
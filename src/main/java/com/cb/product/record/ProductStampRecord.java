@@ -0,0 +1,6 @@
+package com.cb.product.record;
+
+import java.time.LocalDateTime;
+
+public record ProductStampRecord(String id, Long version, LocalDateTime updatedOn) {
+}
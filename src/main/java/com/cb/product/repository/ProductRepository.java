@@ -1,9 +1,37 @@
 package com.cb.product.repository;
 
 import com.cb.product.entity.Product;
+import com.cb.product.record.ProductStampRecord;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
 @Repository
-public interface ProductRepository extends MongoRepository<Product, String> {
+public interface ProductRepository extends MongoRepository<Product, String>, ProductRepositoryCustom {
+
+    Optional<Product> findByIdAndActiveTrue(String id);
+
+    List<Product> findByIdInAndActiveTrue(Collection<String> ids);
+
+    Optional<ProductStampRecord> findStampById(String id);
+
+    Optional<ProductStampRecord> findStampByIdAndActiveTrue(String id);
+
+    List<Product> findByOrderByIdAsc(Limit limit);
+
+    List<Product> findByActiveTrueOrderByIdAsc(Limit limit);
+
+    List<Product> findByIdGreaterThanOrderByIdAsc(ObjectId id, Limit limit);
+
+    List<Product> findByActiveTrueAndIdGreaterThanOrderByIdAsc(ObjectId id, Limit limit);
+
+    Stream<Product> streamByOrderByIdAsc();
+
+    Stream<Product> streamByActiveTrueOrderByIdAsc();
 }
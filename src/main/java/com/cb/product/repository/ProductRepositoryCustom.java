@@ -0,0 +1,34 @@
+package com.cb.product.repository;
+
+import com.cb.product.entity.Product;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public interface ProductRepositoryCustom {
+
+    Product create(Product product);
+
+    Optional<Product> replace(Product product);
+
+    BulkWriteResult upsertAll(List<Product> products);
+
+    Optional<Product> patch(String id, Map<String, Object> fields, Long expectedVersion);
+
+    boolean softDeleteById(String id, Long expectedVersion);
+
+    long softDeleteAllById(Collection<String> ids);
+
+    Optional<Product> restore(String id, Long expectedVersion);
+
+    List<Product> search(Query query);
+
+    List<Document> indexStats();
+
+    Document explain(Query query, boolean executionStats);
+}
@@ -0,0 +1,116 @@
+package com.cb.product.repository;
+
+import com.cb.product.entity.Product;
+import com.mongodb.bulk.BulkWriteResult;
+import lombok.AllArgsConstructor;
+import org.bson.Document;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.cb.product.repository.ProductUpdates.byIdAndVersion;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@AllArgsConstructor
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+
+    final MongoTemplate mongoTemplate;
+
+    // only there when product.write-batch.enabled is set
+    final ObjectProvider<ProductWriteBatcher> productWriteBatcher;
+
+    @Override
+    public Product create(Product product) {
+        ProductWriteBatcher batcher = productWriteBatcher.getIfAvailable();
+        return batcher == null ? mongoTemplate.insert(product) : batcher.insert(product);
+    }
+
+    @Override
+    public Optional<Product> replace(Product product) {
+        ProductWriteBatcher batcher = productWriteBatcher.getIfAvailable();
+        if (batcher != null && product.getVersion() == null) {
+            return Optional.ofNullable(batcher.upsert(product));
+        }
+        // without an expected version the write is unconditional and behaves like save (upsert by id)
+        FindAndModifyOptions options = FindAndModifyOptions.options()
+                .returnNew(true)
+                .upsert(product.getVersion() == null);
+        return Optional.ofNullable(mongoTemplate.findAndModify(query(byIdAndVersion(product.getId(), product.getVersion())),
+                ProductUpdates.replacement(mongoTemplate.getConverter(), product), options, Product.class));
+    }
+
+    @Override
+    public BulkWriteResult upsertAll(List<Product> products) {
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        products.forEach(product -> bulkOperations.upsert(query(where("id").is(product.getId())),
+                ProductUpdates.replacement(mongoTemplate.getConverter(), product)));
+        return bulkOperations.execute();
+    }
+
+    @Override
+    public Optional<Product> patch(String id, Map<String, Object> fields, Long expectedVersion) {
+        return Optional.ofNullable(mongoTemplate.findAndModify(query(byIdAndVersion(id, expectedVersion)),
+                ProductUpdates.patch(fields), FindAndModifyOptions.options().returnNew(true), Product.class));
+    }
+
+    @Override
+    public boolean softDeleteById(String id, Long expectedVersion) {
+        ProductWriteBatcher batcher = productWriteBatcher.getIfAvailable();
+        if (batcher != null && expectedVersion == null) {
+            return batcher.softDelete(id);
+        }
+        return mongoTemplate.updateFirst(query(byIdAndVersion(id, expectedVersion)), ProductUpdates.softDelete(),
+                Product.class).getMatchedCount() > 0;
+    }
+
+    @Override
+    public long softDeleteAllById(Collection<String> ids) {
+        return mongoTemplate.updateMulti(query(where("id").in(ids)), ProductUpdates.softDelete(), Product.class)
+                .getMatchedCount();
+    }
+
+    @Override
+    public Optional<Product> restore(String id, Long expectedVersion) {
+        return Optional.ofNullable(mongoTemplate.findAndModify(query(byIdAndVersion(id, expectedVersion)),
+                ProductUpdates.restore(), FindAndModifyOptions.options().returnNew(true), Product.class));
+    }
+
+    @Override
+    public List<Product> search(Query query) {
+        return mongoTemplate.find(query, Product.class);
+    }
+
+    @Override
+    public List<Document> indexStats() {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Product.class))
+                .aggregate(List.of(new Document("$indexStats", new Document())))
+                .into(new ArrayList<>());
+    }
+
+    @Override
+    public Document explain(Query query, boolean executionStats) {
+        MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(Product.class);
+        QueryMapper queryMapper = new QueryMapper(mongoTemplate.getConverter());
+        Document find = new Document("find", mongoTemplate.getCollectionName(Product.class))
+                .append("filter", queryMapper.getMappedObject(query.getQueryObject(), entity))
+                .append("sort", queryMapper.getMappedSort(query.getSortObject(), entity))
+                .append("projection", queryMapper.getMappedFields(query.getFieldsObject(), entity));
+        if (query.isLimited()) {
+            find.append("limit", query.getLimit());
+        }
+        return mongoTemplate.getDb().runCommand(new Document("explain", find)
+                .append("verbosity", executionStats ? "executionStats" : "queryPlanner"));
+    }
+}
@@ -0,0 +1,104 @@
+package com.cb.product.repository;
+
+import com.cb.product.entity.Product;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.mapping.PersistentPropertyAccessor;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+final class ProductUpdates {
+
+    private ProductUpdates() {
+    }
+
+    static Criteria byIdAndVersion(String id, Long version) {
+        Criteria criteria = where("id").is(id);
+        return version == null ? criteria : criteria.and("version").is(version);
+    }
+
+    static Update replacement(MongoConverter converter, Product product) {
+        return replacementFields(converter, product, LocalDateTime.now()).inc("version", 1);
+    }
+
+    // for a caller that read the product it replaces and so knows the version it ends up with
+    static Update replacement(MongoConverter converter, Product product, long version, LocalDateTime now) {
+        return replacementFields(converter, product, now).set("version", version);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Update replacementFields(MongoConverter converter, Product product, LocalDateTime now) {
+        MongoPersistentEntity<Product> entity = (MongoPersistentEntity<Product>) converter.getMappingContext()
+                .getRequiredPersistentEntity(Product.class);
+        PersistentPropertyAccessor<Product> accessor = entity.getPropertyAccessor(product);
+        // without active the product keeps its soft delete state, unsetting it would leave it neither live nor deleted
+        boolean keepDeleteState = product.getActive() == null;
+        Update update = new Update();
+        for (MongoPersistentProperty property : entity) {
+            if (property.isIdProperty() || property.isVersionProperty()) {
+                continue;
+            }
+            Object value = accessor.getProperty(property);
+            if (property.isAnnotationPresent(LastModifiedDate.class)) {
+                update.set(property.getName(), now);
+            } else if (value != null) {
+                update.set(property.getName(), value);
+            } else if (property.isAnnotationPresent(CreatedDate.class)) {
+                update.setOnInsert(property.getName(), now);
+            } else if (keepDeleteState && property.getName().equals("active")) {
+                // an upsert that inserts starts out live, like a created product
+                update.setOnInsert(property.getName(), true);
+            } else if (keepDeleteState && property.getName().equals("deletedOn")) {
+                continue;
+            } else {
+                update.unset(property.getName());
+            }
+        }
+        return update;
+    }
+
+    // the product as that replacement leaves it, what the update does not set stays as it was found
+    static Product replaced(Product product, Product found, long version, LocalDateTime now) {
+        boolean keepDeleteState = product.getActive() == null;
+        LocalDateTime createdOn = product.getCreatedOn() != null ? product.getCreatedOn()
+                : found == null ? now : found.getCreatedOn();
+        return new Product(product.getId(), product.getName(), product.getPrice(), product.getShortDesc(),
+                product.getLongDesc(), product.getThumbnail(), product.getImage(), createdOn, now,
+                keepDeleteState ? (found == null ? null : found.getDeletedOn()) : product.getDeletedOn(),
+                keepDeleteState ? (found == null ? Boolean.TRUE : found.getActive()) : product.getActive(),
+                version);
+    }
+
+    static Update patch(Map<String, Object> fields) {
+        Update update = new Update();
+        fields.forEach(update::set);
+        update.set("updatedOn", LocalDateTime.now());
+        update.inc("version", 1);
+        return update;
+    }
+
+    static Update softDelete() {
+        LocalDateTime now = LocalDateTime.now();
+        return new Update()
+                .set("active", false)
+                .set("deletedOn", now)
+                .set("updatedOn", now)
+                .inc("version", 1);
+    }
+
+    static Update restore() {
+        return new Update()
+                .set("active", true)
+                .unset("deletedOn")
+                .set("updatedOn", LocalDateTime.now())
+                .inc("version", 1);
+    }
+}
@@ -0,0 +1,286 @@
+package com.cb.product.repository;
+
+import com.cb.product.config.ProductProperties;
+import com.cb.product.entity.Product;
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+// Coalesces concurrent single writes: the first write waits up to maxDelay for others, the products they replace or
+// delete are read with one query, then up to maxSize of them go out as one unordered bulk write. Each caller gets its
+// own result, worked out from what was read and what was written, or its own error. Version checked replacements are
+// not batched, their caller expects a conflict rather than a retry, so those keep their findAndModify.
+@Slf4j
+public class ProductWriteBatcher implements SmartLifecycle {
+
+    // how often an idle flusher looks at the running flag
+    static final long IDLE_POLL_MILLIS = 100;
+
+    enum Kind {INSERT, UPSERT, DELETE}
+
+    // deletes complete with the product as it was found, or null when there was none
+    record Write(Kind kind, String id, Product product, CompletableFuture<Product> result) {
+    }
+
+    final MongoTemplate mongoTemplate;
+    final Validator validator;
+    final ProductProperties.WriteBatch properties;
+    final BlockingQueue<Write> queue = new LinkedBlockingQueue<>();
+
+    volatile boolean running;
+    volatile Thread thread;
+
+    public ProductWriteBatcher(MongoTemplate mongoTemplate, Validator validator,
+                               ProductProperties.WriteBatch properties) {
+        this.mongoTemplate = mongoTemplate;
+        this.validator = validator;
+        this.properties = properties;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        thread = Thread.ofPlatform().daemon().name("product-write-batcher").start(this::run);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Thread flusher = thread;
+        if (flusher != null) {
+            try {
+                flusher.join(IDLE_POLL_MILLIS * 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    public Product insert(Product product) {
+        // validated here rather than by the save event, one invalid product must not fail the whole batch
+        Set<ConstraintViolation<Product>> violations = validator.validate(product);
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+        if (product.getId() == null) {
+            product.setId(new ObjectId().toHexString());
+        }
+        product.setVersion(0L);
+        return submit(new Write(Kind.INSERT, product.getId(), product, new CompletableFuture<>()));
+    }
+
+    public Product upsert(Product product) {
+        return submit(new Write(Kind.UPSERT, product.getId(), product, new CompletableFuture<>()));
+    }
+
+    public boolean softDelete(String id) {
+        return submit(new Write(Kind.DELETE, id, null, new CompletableFuture<>())) != null;
+    }
+
+    Product submit(Write write) {
+        queue.offer(write);
+        // whoever takes the write off the queue owns it, a stopped flusher may already be gone
+        if (!running && queue.remove(write)) {
+            flush(List.of(write));
+        }
+        try {
+            return write.result().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    void run() {
+        List<Write> pending = new ArrayList<>();
+        while (running || !pending.isEmpty() || !queue.isEmpty()) {
+            try {
+                if (pending.isEmpty()) {
+                    collect(pending);
+                } else {
+                    queue.drainTo(pending, properties.getMaxSize());
+                }
+                pending = flushNext(pending);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+    }
+
+    void collect(List<Write> pending) throws InterruptedException {
+        Write first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        pending.add(first);
+        long deadline = System.nanoTime() + properties.getMaxDelay().toNanos();
+        while (pending.size() < properties.getMaxSize()) {
+            Write next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            pending.add(next);
+        }
+    }
+
+    // a product is written at most once per batch, later writes to it wait for the next one and keep their order
+    List<Write> flushNext(List<Write> pending) {
+        List<Write> batch = new ArrayList<>();
+        List<Write> deferred = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
+        for (Write write : pending) {
+            if (batch.size() < properties.getMaxSize() && ids.add(write.id())) {
+                batch.add(write);
+            } else {
+                deferred.add(write);
+            }
+        }
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+        return deferred;
+    }
+
+    // a replacement that lost the race to another writer goes again, against what that writer left
+    void flush(List<Write> batch) {
+        List<Write> retry = batch;
+        while (!retry.isEmpty()) {
+            retry = write(retry);
+        }
+    }
+
+    List<Write> write(List<Write> batch) {
+        List<Write> retry = new ArrayList<>();
+        try {
+            Map<String, Product> current = readCurrent(batch);
+            BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+            // the precision Mongo keeps, so the returned product matches what a later read sees
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+            List<Write> written = new ArrayList<>();
+            List<Product> outcomes = new ArrayList<>();
+            for (Write write : batch) {
+                Product found = current.get(write.id());
+                if (write.kind() == Kind.DELETE && found == null) {
+                    write.result().complete(null);
+                    continue;
+                }
+                switch (write.kind()) {
+                    case INSERT -> {
+                        // with its version already set auditing takes the product as modified and only stamps updatedOn
+                        write.product().setCreatedOn(now);
+                        bulkOperations.insert(write.product());
+                        outcomes.add(write.product());
+                    }
+                    case UPSERT -> {
+                        long version = found == null || found.getVersion() == null ? 1 : found.getVersion() + 1;
+                        bulkOperations.upsert(query(byVersionFound(write.id(), found)),
+                                ProductUpdates.replacement(mongoTemplate.getConverter(), write.product(), version, now));
+                        outcomes.add(ProductUpdates.replaced(write.product(), found, version, now));
+                    }
+                    case DELETE -> {
+                        bulkOperations.updateOne(query(where("id").is(write.id())), ProductUpdates.softDelete());
+                        outcomes.add(found);
+                    }
+                }
+                written.add(write);
+            }
+            if (written.isEmpty()) {
+                return retry;
+            }
+            List<BulkWriteError> errors = List.of();
+            try {
+                bulkOperations.execute();
+            } catch (BulkOperationException e) {
+                errors = e.getErrors();
+            }
+            Map<Integer, BulkWriteError> failed = errors.stream()
+                    .collect(Collectors.toMap(BulkWriteError::getIndex, Function.identity()));
+            for (int i = 0; i < written.size(); i++) {
+                Write write = written.get(i);
+                BulkWriteError error = failed.get(i);
+                if (error == null) {
+                    write.result().complete(outcomes.get(i));
+                } else if (write.kind() == Kind.UPSERT && lostRace(error)) {
+                    retry.add(write);
+                } else {
+                    write.result().completeExceptionally(toException(error));
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Write batch of {} failed", batch.size(), e);
+            batch.forEach(write -> write.result().completeExceptionally(e));
+            return List.of();
+        }
+        return retry;
+    }
+
+    // one read for the products the batch replaces or deletes, their outcome is worked out from it instead of read
+    // back after the write, when a later writer may already have moved them on
+    Map<String, Product> readCurrent(List<Write> batch) {
+        List<String> ids = batch.stream()
+                .filter(write -> write.kind() != Kind.INSERT)
+                .map(Write::id)
+                .toList();
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        return mongoTemplate.find(query(where("id").in(ids)), Product.class).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+    }
+
+    // once the product moved on from the version read, the upsert finds no match and tries to insert its id again,
+    // so the duplicate key error tells which replacement another writer got to first
+    static Criteria byVersionFound(String id, Product found) {
+        Criteria criteria = where("id").is(id);
+        return found == null || found.getVersion() == null
+                ? criteria.and("version").exists(false)
+                : criteria.and("version").is(found.getVersion());
+    }
+
+    // a duplicate of the product's own id rather than of a unique index on its fields
+    static boolean lostRace(BulkWriteError error) {
+        return ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY
+                && error.getMessage().contains("index: _id_ ");
+    }
+
+    static RuntimeException toException(BulkWriteError error) {
+        if (ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY) {
+            return new DuplicateKeyException(error.getMessage());
+        }
+        return new DataIntegrityViolationException(error.getMessage());
+    }
+}
@@ -0,0 +1,36 @@
+package com.cb.product.repository;
+
+import com.cb.product.entity.Product;
+import com.cb.product.record.ProductStampRecord;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+@Repository
+public interface ReactiveProductRepository extends ReactiveMongoRepository<Product, String>, ReactiveProductRepositoryCustom {
+
+    Mono<Product> findByIdAndActiveTrue(String id);
+
+    Flux<Product> findByIdInAndActiveTrue(Collection<String> ids);
+
+    Mono<ProductStampRecord> findStampById(String id);
+
+    Mono<ProductStampRecord> findStampByIdAndActiveTrue(String id);
+
+    Flux<Product> findByOrderByIdAsc();
+
+    Flux<Product> findByOrderByIdAsc(Limit limit);
+
+    Flux<Product> findByActiveTrueOrderByIdAsc();
+
+    Flux<Product> findByActiveTrueOrderByIdAsc(Limit limit);
+
+    Flux<Product> findByIdGreaterThanOrderByIdAsc(ObjectId id, Limit limit);
+
+    Flux<Product> findByActiveTrueAndIdGreaterThanOrderByIdAsc(ObjectId id, Limit limit);
+}
@@ -0,0 +1,28 @@
+package com.cb.product.repository;
+
+import com.cb.product.entity.Product;
+import com.mongodb.bulk.BulkWriteResult;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface ReactiveProductRepositoryCustom {
+
+    Mono<Product> replace(Product product);
+
+    Mono<BulkWriteResult> upsertAll(List<Product> products);
+
+    Mono<Product> patch(String id, Map<String, Object> fields, Long expectedVersion);
+
+    Mono<Boolean> softDeleteById(String id, Long expectedVersion);
+
+    Mono<Long> softDeleteAllById(Collection<String> ids);
+
+    Mono<Product> restore(String id, Long expectedVersion);
+
+    Flux<Product> search(Query query);
+}
@@ -0,0 +1,75 @@
+package com.cb.product.repository;
+
+import com.cb.product.entity.Product;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.UpdateResult;
+import lombok.AllArgsConstructor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static com.cb.product.repository.ProductUpdates.byIdAndVersion;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@AllArgsConstructor
+public class ReactiveProductRepositoryCustomImpl implements ReactiveProductRepositoryCustom {
+
+    final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Override
+    public Mono<Product> replace(Product product) {
+        // without an expected version the write is unconditional and behaves like save (upsert by id)
+        FindAndModifyOptions options = FindAndModifyOptions.options()
+                .returnNew(true)
+                .upsert(product.getVersion() == null);
+        return reactiveMongoTemplate.findAndModify(query(byIdAndVersion(product.getId(), product.getVersion())),
+                ProductUpdates.replacement(reactiveMongoTemplate.getConverter(), product), options, Product.class);
+    }
+
+    @Override
+    public Mono<BulkWriteResult> upsertAll(List<Product> products) {
+        ReactiveBulkOperations bulkOperations = reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        products.forEach(product -> bulkOperations.upsert(query(where("id").is(product.getId())),
+                ProductUpdates.replacement(reactiveMongoTemplate.getConverter(), product)));
+        return bulkOperations.execute();
+    }
+
+    @Override
+    public Mono<Product> patch(String id, Map<String, Object> fields, Long expectedVersion) {
+        return reactiveMongoTemplate.findAndModify(query(byIdAndVersion(id, expectedVersion)),
+                ProductUpdates.patch(fields), FindAndModifyOptions.options().returnNew(true), Product.class);
+    }
+
+    @Override
+    public Mono<Boolean> softDeleteById(String id, Long expectedVersion) {
+        return reactiveMongoTemplate.updateFirst(query(byIdAndVersion(id, expectedVersion)), ProductUpdates.softDelete(),
+                        Product.class)
+                .map(updateResult -> updateResult.getMatchedCount() > 0);
+    }
+
+    @Override
+    public Mono<Long> softDeleteAllById(Collection<String> ids) {
+        return reactiveMongoTemplate.updateMulti(query(where("id").in(ids)), ProductUpdates.softDelete(), Product.class)
+                .map(UpdateResult::getMatchedCount);
+    }
+
+    @Override
+    public Mono<Product> restore(String id, Long expectedVersion) {
+        return reactiveMongoTemplate.findAndModify(query(byIdAndVersion(id, expectedVersion)),
+                ProductUpdates.restore(), FindAndModifyOptions.options().returnNew(true), Product.class);
+    }
+
+    @Override
+    public Flux<Product> search(Query query) {
+        return reactiveMongoTemplate.find(query, Product.class);
+    }
+}
@@ -0,0 +1,13 @@
+package com.cb.product.service;
+
+import com.cb.product.record.ProductIndexStatsRecord;
+import com.cb.product.record.ProductQueryPlanRecord;
+
+import java.util.List;
+
+public interface ProductAdminService {
+
+    List<ProductIndexStatsRecord> getIndexStats();
+
+    List<ProductQueryPlanRecord> explainQueries(boolean executionStats);
+}
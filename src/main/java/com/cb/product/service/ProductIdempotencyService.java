@@ -0,0 +1,8 @@
+package com.cb.product.service;
+
+import com.cb.product.record.ProductRecord;
+
+public interface ProductIdempotencyService {
+
+    ProductRecord save(String idempotencyKey, ProductRecord productRecord);
+}
@@ -1,16 +1,50 @@
 package com.cb.product.service;
 
+import com.cb.product.record.ProductBatchRecord;
+import com.cb.product.record.ProductBulkItemRecord;
+import com.cb.product.record.ProductChangesRecord;
+import com.cb.product.record.ProductPageRecord;
 import com.cb.product.record.ProductRecord;
+import com.cb.product.record.ProductSearchRecord;
+import com.cb.product.record.ProductStampRecord;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 public interface ProductService {
 
     ProductRecord save(ProductRecord productRecord);
 
-    ProductRecord getProduct(String id);
+    ProductRecord create(String id, ProductRecord productRecord);
 
-    List<ProductRecord> getAllProducts();
+    List<ProductBulkItemRecord> bulkUpsert(List<ProductRecord> productRecords);
 
-    void deleteProduct(String id);
+    ProductRecord patchProduct(String id, Map<String, Object> fields, Long expectedVersion);
+
+    ProductRecord getProduct(String id, boolean includeDeleted);
+
+    ProductRecord getProduct(String id, boolean includeDeleted, Set<String> fields);
+
+    ProductBatchRecord getProductsByIds(List<String> ids, boolean includeDeleted);
+
+    ProductStampRecord getProductStamp(String id, boolean includeDeleted);
+
+    ProductPageRecord getProducts(String cursor, Integer size, boolean includeDeleted);
+
+    ProductPageRecord getProducts(String cursor, Integer size, boolean includeDeleted, Set<String> fields);
+
+    ProductPageRecord searchProducts(ProductSearchRecord search, Set<String> fields, String cursor, Integer size,
+                                     boolean includeDeleted);
+
+    ProductChangesRecord getChanges(String token, Integer size);
+
+    Stream<ProductRecord> exportProducts(boolean includeDeleted);
+
+    void deleteProduct(String id, Long expectedVersion);
+
+    long deleteProducts(List<String> ids);
+
+    ProductRecord restoreProduct(String id, Long expectedVersion);
 }
@@ -0,0 +1,49 @@
+package com.cb.product.service;
+
+import com.cb.product.record.ProductBatchRecord;
+import com.cb.product.record.ProductBulkItemRecord;
+import com.cb.product.record.ProductChangesRecord;
+import com.cb.product.record.ProductPageRecord;
+import com.cb.product.record.ProductRecord;
+import com.cb.product.record.ProductSearchRecord;
+import com.cb.product.record.ProductStampRecord;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public interface ReactiveProductService {
+
+    Mono<ProductRecord> save(ProductRecord productRecord);
+
+    Mono<List<ProductBulkItemRecord>> bulkUpsert(List<ProductRecord> productRecords);
+
+    Mono<ProductRecord> patchProduct(String id, Map<String, Object> fields, Long expectedVersion);
+
+    Mono<ProductRecord> getProduct(String id, boolean includeDeleted);
+
+    Mono<ProductRecord> getProduct(String id, boolean includeDeleted, Set<String> fields);
+
+    Mono<ProductBatchRecord> getProductsByIds(List<String> ids, boolean includeDeleted);
+
+    Mono<ProductStampRecord> getProductStamp(String id, boolean includeDeleted);
+
+    Mono<ProductPageRecord> getProducts(String cursor, Integer size, boolean includeDeleted);
+
+    Mono<ProductPageRecord> getProducts(String cursor, Integer size, boolean includeDeleted, Set<String> fields);
+
+    Mono<ProductPageRecord> searchProducts(ProductSearchRecord search, Set<String> fields, String cursor, Integer size,
+                                           boolean includeDeleted);
+
+    Mono<ProductChangesRecord> getChanges(String token, Integer size);
+
+    Flux<ProductRecord> exportProducts(boolean includeDeleted);
+
+    Mono<Void> deleteProduct(String id, Long expectedVersion);
+
+    Mono<Long> deleteProducts(List<String> ids);
+
+    Mono<ProductRecord> restoreProduct(String id, Long expectedVersion);
+}
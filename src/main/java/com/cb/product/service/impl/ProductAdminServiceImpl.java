@@ -0,0 +1,127 @@
+package com.cb.product.service.impl;
+
+import com.cb.product.config.ProductProperties;
+import com.cb.product.record.ProductIndexStatsRecord;
+import com.cb.product.record.ProductQueryPlanRecord;
+import com.cb.product.record.ProductSearchRecord;
+import com.cb.product.repository.ProductRepository;
+import com.cb.product.service.ProductAdminService;
+import lombok.AllArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.cb.product.service.impl.ProductServiceSupport.changesQuery;
+import static com.cb.product.service.impl.ProductServiceSupport.encodeCursor;
+import static com.cb.product.service.impl.ProductServiceSupport.pageQuery;
+import static com.cb.product.service.impl.ProductServiceSupport.productQuery;
+import static com.cb.product.service.impl.ProductServiceSupport.searchQuery;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@Service
+@AllArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ProductAdminServiceImpl implements ProductAdminService {
+
+    final ProductRepository productRepository;
+
+    final ProductProperties productProperties;
+
+    @Override
+    public List<ProductIndexStatsRecord> getIndexStats() {
+        return productRepository.indexStats().stream()
+                .map(ProductAdminServiceImpl::toIndexStats)
+                .toList();
+    }
+
+    @Override
+    public List<ProductQueryPlanRecord> explainQueries(boolean executionStats) {
+        List<ProductQueryPlanRecord> queryPlans = new ArrayList<>();
+        serviceQueries().forEach((name, query) ->
+                queryPlans.add(toQueryPlan(name, productRepository.explain(query, executionStats))));
+        return queryPlans;
+    }
+
+    // the shapes issued by ProductRepository for each ProductService read and write, keyed by service method; each
+    // is limited to a page so explaining with executionStats never runs a full read
+    Map<String, Query> serviceQueries() {
+        String id = new ObjectId().toHexString();
+        int pageLimit = productProperties.getPage().getDefaultSize() + 1;
+        Map<String, Query> queries = new LinkedHashMap<>();
+        queries.put("getProduct", productQuery(id, false).limit(1));
+        Query stamp = productQuery(id, false).limit(1);
+        stamp.fields().include("id", "version", "updatedOn");
+        queries.put("getProductStamp", stamp);
+        queries.put("getProductsByIds", query(where("id").in(id, new ObjectId().toHexString()).and("active").is(true)));
+        queries.put("getProducts", pageQuery(null, false).limit(pageLimit));
+        queries.put("getProducts.cursor", pageQuery(new ObjectId(id), false).limit(pageLimit));
+        queries.put("getProducts.includeDeleted", pageQuery(null, true).limit(pageLimit));
+        queries.put("searchProducts.price", searchQuery(new ProductSearchRecord(null, null,
+                new BigDecimal("100"), new BigDecimal("1000"), null, null, null, null, null, List.of("price")), false)
+                .limit(pageLimit));
+        queries.put("searchProducts.name", searchQuery(new ProductSearchRecord("iPhone", null,
+                null, null, null, null, null, null, null, List.of("name")), false)
+                .limit(pageLimit));
+        queries.put("searchProducts.text", searchQuery(new ProductSearchRecord(null, "iphone",
+                null, null, null, null, null, null, null, null), false)
+                .limit(pageLimit));
+        queries.put("getChanges", changesQuery(encodeCursor(LocalDateTime.now().minusHours(1) + "," + id),
+                LocalDateTime.now()).limit(pageLimit));
+        queries.put("exportProducts", pageQuery(null, false).limit(pageLimit));
+        queries.put("deleteProducts", query(where("id").in(id, new ObjectId().toHexString())));
+        return queries;
+    }
+
+    private static ProductIndexStatsRecord toIndexStats(Document indexStats) {
+        Document accesses = indexStats.get("accesses", Document.class);
+        Date since = accesses.getDate("since");
+        return new ProductIndexStatsRecord(indexStats.getString("name"), indexStats.get("key", Document.class),
+                accesses.get("ops", Number.class).longValue(),
+                since == null ? null : LocalDateTime.ofInstant(since.toInstant(), ZoneId.systemDefault()));
+    }
+
+    private static ProductQueryPlanRecord toQueryPlan(String name, Document explain) {
+        Document winningPlan = explain.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+        // the slot based engine nests the classic plan tree under queryPlan
+        if (winningPlan.containsKey("queryPlan")) {
+            winningPlan = winningPlan.get("queryPlan", Document.class);
+        }
+        List<String> stages = new ArrayList<>();
+        List<String> indexes = new ArrayList<>();
+        collectStages(winningPlan, stages, indexes);
+        Document executionStats = explain.get("executionStats", new Document());
+        return new ProductQueryPlanRecord(name, stages, indexes, stages.contains("COLLSCAN"),
+                count(executionStats, "totalKeysExamined"), count(executionStats, "totalDocsExamined"),
+                count(executionStats, "nReturned"));
+    }
+
+    private static void collectStages(Document stage, List<String> stages, List<String> indexes) {
+        stages.add(stage.getString("stage"));
+        if (stage.containsKey("indexName")) {
+            indexes.add(stage.getString("indexName"));
+        }
+        if (stage.containsKey("inputStage")) {
+            collectStages(stage.get("inputStage", Document.class), stages, indexes);
+        }
+        if (stage.containsKey("inputStages")) {
+            stage.getList("inputStages", Document.class).forEach(input -> collectStages(input, stages, indexes));
+        }
+    }
+
+    private static long count(Document executionStats, String key) {
+        Number count = executionStats.get(key, Number.class);
+        return count == null ? 0 : count.longValue();
+    }
+}
@@ -0,0 +1,215 @@
+package com.cb.product.service.impl;
+
+import com.cb.product.config.ProductProperties;
+import com.cb.product.exception.InvalidRequestException;
+import com.cb.product.exception.RecordNotFoundException;
+import com.cb.product.exception.RequestInProgressException;
+import com.cb.product.record.ProductRecord;
+import com.cb.product.service.ProductIdempotencyService;
+import com.cb.product.service.ProductService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Updates;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.UUID;
+
+// Runs a save at most once per Idempotency-Key. The first request claims the key in a TTL collection shared by all
+// nodes and stores its response there; a retry with the same key and body gets that response back without saving
+// again, and one arriving while the first is still running waits for it. Failed saves give their key back.
+@Slf4j
+@Service
+@AllArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ProductIdempotencyServiceImpl implements ProductIdempotencyService {
+
+    static final int MAX_KEY_LENGTH = 255;
+    static final long POLL_MILLIS = 50;
+    static final String PENDING = "PENDING";
+    static final String DONE = "DONE";
+    static final int COMPLETE_ATTEMPTS = 3;
+
+    final ProductService productService;
+
+    final MongoTemplate mongoTemplate;
+
+    final ObjectMapper objectMapper;
+
+    final ProductProperties productProperties;
+
+    @Override
+    public ProductRecord save(String idempotencyKey, ProductRecord productRecord) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new InvalidRequestException("Invalid Idempotency-Key [" + idempotencyKey + "]");
+        }
+        ProductProperties.Idempotency properties = productProperties.getIdempotency();
+        String fingerprint = DigestUtils.md5DigestAsHex(toJson(productRecord).getBytes(StandardCharsets.UTF_8));
+        String owner = UUID.randomUUID().toString();
+        Instant deadline = Instant.now().plus(properties.getWaitTimeout());
+        while (true) {
+            // a create gets its product id with the claim, whoever ends up holding the claim saves under it
+            String productId = productRecord.id() == null ? new ObjectId().toHexString() : null;
+            if (claim(idempotencyKey, fingerprint, owner, productId)) {
+                return saveClaimed(idempotencyKey, owner, productId, productRecord);
+            }
+            Document stored = collection().find(Filters.eq("_id", idempotencyKey)).first();
+            if (stored == null) {
+                // given back or expired in the meantime
+                continue;
+            }
+            if (!fingerprint.equals(stored.getString("fingerprint"))) {
+                throw new InvalidRequestException("Idempotency-Key [" + idempotencyKey
+                        + "] was already used for a different request");
+            }
+            if (DONE.equals(stored.getString("status"))) {
+                return fromJson(stored.getString("response"));
+            }
+            if (abandoned(stored, properties) && takeOver(stored, owner)) {
+                return saveClaimed(idempotencyKey, owner, stored.getString("productId"), productRecord);
+            }
+            if (!Instant.now().isBefore(deadline)) {
+                throw new RequestInProgressException("Request with Idempotency-Key [" + idempotencyKey
+                        + "] is still in progress");
+            }
+            pause();
+        }
+    }
+
+    boolean claim(String idempotencyKey, String fingerprint, String owner, String productId) {
+        Date now = new Date();
+        try {
+            collection().insertOne(new Document("_id", idempotencyKey)
+                    .append("fingerprint", fingerprint)
+                    .append("status", PENDING)
+                    .append("owner", owner)
+                    .append("productId", productId)
+                    .append("claimedOn", now)
+                    .append("expiresOn", expiresOn(now)));
+            return true;
+        } catch (MongoWriteException e) {
+            if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                throw e;
+            }
+            return false;
+        }
+    }
+
+    ProductRecord saveClaimed(String idempotencyKey, String owner, String productId, ProductRecord productRecord) {
+        ProductRecord saved;
+        try {
+            saved = productId == null
+                    ? productService.save(productRecord) : productService.create(productId, productRecord);
+        } catch (DuplicateKeyException e) {
+            if (productId == null) {
+                collection().deleteOne(owned(idempotencyKey, owner));
+                throw e;
+            }
+            saved = savedBefore(idempotencyKey, productId);
+        } catch (RuntimeException e) {
+            // nothing was saved, so a retry gets to run instead of being answered with this error
+            collection().deleteOne(owned(idempotencyKey, owner));
+            throw e;
+        }
+        complete(idempotencyKey, owner, saved);
+        return saved;
+    }
+
+    // the claim was taken over from a request that still runs, or that saved but never stored its response, so the
+    // product it saved under the shared id is the response; the key is kept either way, the product exists
+    ProductRecord savedBefore(String idempotencyKey, String productId) {
+        try {
+            return productService.getProduct(productId, true);
+        } catch (RecordNotFoundException e) {
+            throw new RequestInProgressException("Request with Idempotency-Key [" + idempotencyKey
+                    + "] is still in progress");
+        }
+    }
+
+    // the product is saved either way; a response that could not be stored leaves the claim to a retry, which finds
+    // the product under its id once the claim is abandoned
+    void complete(String idempotencyKey, String owner, ProductRecord saved) {
+        for (int attempt = 1; ; attempt++) {
+            Date now = new Date();
+            try {
+                collection().updateOne(owned(idempotencyKey, owner), Updates.combine(
+                        Updates.set("status", DONE),
+                        Updates.set("response", toJson(saved)),
+                        Updates.set("completedOn", now),
+                        Updates.set("expiresOn", expiresOn(now))));
+                return;
+            } catch (MongoException e) {
+                if (attempt == COMPLETE_ATTEMPTS) {
+                    log.warn("Could not store the response for Idempotency-Key [{}]", idempotencyKey, e);
+                    return;
+                }
+            }
+        }
+    }
+
+    boolean abandoned(Document stored, ProductProperties.Idempotency properties) {
+        Date claimedOn = stored.getDate("claimedOn");
+        return claimedOn != null && claimedOn.toInstant().plus(properties.getLockTimeout()).isBefore(Instant.now());
+    }
+
+    // only one of several waiting retries wins the key, the others go on waiting for it
+    boolean takeOver(Document stored, String owner) {
+        return collection().updateOne(Filters.and(owned(stored.getString("_id"), stored.getString("owner")),
+                        Filters.eq("status", PENDING)),
+                Updates.combine(Updates.set("owner", owner), Updates.set("claimedOn", new Date())))
+                .getModifiedCount() > 0;
+    }
+
+    static Bson owned(String idempotencyKey, String owner) {
+        return Filters.and(Filters.eq("_id", idempotencyKey), Filters.eq("owner", owner));
+    }
+
+    Date expiresOn(Date now) {
+        return Date.from(now.toInstant().plus(productProperties.getIdempotency().getTtl()));
+    }
+
+    void pause() {
+        try {
+            Thread.sleep(POLL_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RequestInProgressException("Interrupted while waiting for the request holding the key");
+        }
+    }
+
+    String toJson(ProductRecord productRecord) {
+        try {
+            return objectMapper.writeValueAsString(productRecord);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    ProductRecord fromJson(String json) {
+        try {
+            return objectMapper.readValue(json, ProductRecord.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    MongoCollection<Document> collection() {
+        return mongoTemplate.getCollection(productProperties.getIdempotency().getCollection());
+    }
+}
@@ -1,56 +1,298 @@
 package com.cb.product.service.impl;
 
+import com.cb.product.config.CacheConfig;
+import com.cb.product.config.ProductProperties;
+import com.cb.product.config.ProductRead;
 import com.cb.product.entity.Product;
-import com.cb.product.exception.RecordNotFoundException;
 import com.cb.product.mapper.ProductMapper;
+import com.cb.product.record.ProductBatchRecord;
+import com.cb.product.record.ProductBulkItemRecord;
+import com.cb.product.record.ProductChangesRecord;
+import com.cb.product.record.ProductPageRecord;
 import com.cb.product.record.ProductRecord;
+import com.cb.product.record.ProductSearchRecord;
+import com.cb.product.record.ProductStampRecord;
 import com.cb.product.repository.ProductRepository;
 import com.cb.product.service.ProductService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import jakarta.validation.Validator;
 import lombok.AllArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static com.cb.product.service.impl.ProductServiceSupport.*;
 
 @Service
 @AllArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class ProductServiceImpl implements ProductService {
 
     final ProductRepository productRepository;
 
     final ProductMapper productMapper;
 
+    final ProductProperties productProperties;
+
+    final Validator validator;
+
+    final ObjectMapper objectMapper;
+
+    final CacheManager cacheManager;
+
     @Override
+    @CacheEvict(cacheNames = CacheConfig.PRODUCT_CACHE, key = "#productRecord.id", condition = "#productRecord.id != null")
     public ProductRecord save(ProductRecord productRecord) {
-        Product product = productMapper.productRecordToProduct(productRecord);
-        product  = productRepository.save(product);
+        if (productRecord.id() == null) {
+            return create(null, productRecord);
+        }
+        Product product = productRepository.replace(productMapper.productRecordToProduct(productRecord))
+                .orElseThrow(() -> writeConflict(productRecord.id(), productRecord.version()));
         return productMapper.productToProductRecord(product);
     }
 
+    // with an id chosen up front a second create of the same product fails with DuplicateKeyException
+    @Override
+    public ProductRecord create(String id, ProductRecord productRecord) {
+        Product product = productMapper.productRecordToProduct(productRecord);
+        product.setId(id);
+        // a new product has no prior version to check; a null version makes the insert start it at version 0
+        product.setVersion(null);
+        activeByDefault(product);
+        return productMapper.productToProductRecord(productRepository.create(product));
+    }
+
+    @Override
+    @CacheEvict(cacheNames = CacheConfig.PRODUCT_CACHE, allEntries = true)
+    public List<ProductBulkItemRecord> bulkUpsert(List<ProductRecord> productRecords) {
+        checkBulkSize(productProperties, productRecords.size());
+        int chunkSize = productProperties.getBulk().getChunkSize();
+        ProductBulkItemRecord[] results = new ProductBulkItemRecord[productRecords.size()];
+        List<Integer> chunkIndexes = new ArrayList<>(chunkSize);
+        List<ProductRecord> chunk = new ArrayList<>(chunkSize);
+        for (int index = 0; index < productRecords.size(); index++) {
+            ProductRecord productRecord = productRecords.get(index);
+            Map<String, String> errors = validate(validator, productRecord);
+            if (!errors.isEmpty()) {
+                results[index] = new ProductBulkItemRecord(index, productRecord == null ? null : productRecord.id(),
+                        ProductBulkItemRecord.Status.FAILED, errors);
+                continue;
+            }
+            chunkIndexes.add(index);
+            chunk.add(productRecord);
+            if (chunk.size() == chunkSize) {
+                writeChunk(chunkIndexes, chunk, results);
+                chunkIndexes.clear();
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            writeChunk(chunkIndexes, chunk, results);
+        }
+        return Arrays.asList(results);
+    }
+
     @Override
-    public ProductRecord getProduct(String id) {
-        return productRepository.findById(id)
+    @CacheEvict(cacheNames = CacheConfig.PRODUCT_CACHE, key = "#id")
+    public ProductRecord patchProduct(String id, Map<String, Object> fields, Long expectedVersion) {
+        return productRepository.patch(id, toPatchValues(objectMapper, validator, fields), expectedVersion)
                 .map(productMapper::productToProductRecord)
-                .orElseThrow(() -> new RecordNotFoundException("Product with ID [" + id + "] not found"));
+                .orElseThrow(() -> writeConflict(id, expectedVersion));
+    }
+
+    @Override
+    @ProductRead(ProductRead.Operation.GET)
+    @Cacheable(cacheNames = CacheConfig.PRODUCT_CACHE, key = "#id", condition = "!#includeDeleted")
+    public ProductRecord getProduct(String id, boolean includeDeleted) {
+        return (includeDeleted ? productRepository.findById(id) : productRepository.findByIdAndActiveTrue(id))
+                .map(productMapper::productToProductRecord)
+                .orElseThrow(() -> notFound(id));
+    }
+
+    // a projection is read straight from Mongo, the cache only holds whole products
+    @Override
+    @ProductRead(ProductRead.Operation.GET)
+    public ProductRecord getProduct(String id, boolean includeDeleted, Set<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return getProduct(id, includeDeleted);
+        }
+        return productRepository.search(project(productQuery(id, includeDeleted), fields).limit(1)).stream()
+                .findFirst()
+                .map(productMapper::productToProductRecord)
+                .orElseThrow(() -> notFound(id));
+    }
+
+    @Override
+    @ProductRead(ProductRead.Operation.BATCH)
+    public ProductBatchRecord getProductsByIds(List<String> ids, boolean includeDeleted) {
+        checkBulkSize(productProperties, ids.size());
+        // the cache only ever holds active products, so a hit is valid with or without includeDeleted
+        Cache cache = cacheManager.getCache(CacheConfig.PRODUCT_CACHE);
+        Map<String, ProductRecord> found = new HashMap<>();
+        List<String> uncached = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(ids)) {
+            ProductRecord cached = cache == null ? null : cache.get(id, ProductRecord.class);
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                uncached.add(id);
+            }
+        }
+        if (!uncached.isEmpty()) {
+            // one $in query for everything the cache did not have
+            List<Product> products = includeDeleted
+                    ? productRepository.findAllById(uncached)
+                    : productRepository.findByIdInAndActiveTrue(uncached);
+            for (Product product : products) {
+                ProductRecord productRecord = productMapper.productToProductRecord(product);
+                found.put(productRecord.id(), productRecord);
+                if (cache != null && Boolean.TRUE.equals(productRecord.active())) {
+                    cache.put(productRecord.id(), productRecord);
+                }
+            }
+        }
+        return toBatch(ids, found);
+    }
+
+    @Override
+    @ProductRead(ProductRead.Operation.GET)
+    public ProductStampRecord getProductStamp(String id, boolean includeDeleted) {
+        return (includeDeleted ? productRepository.findStampById(id) : productRepository.findStampByIdAndActiveTrue(id))
+                .orElseThrow(() -> notFound(id));
     }
 
     @Override
-    public List<ProductRecord> getAllProducts() {
-        return productMapper.productsToProductRecords(productRepository.findAll());
+    @ProductRead(ProductRead.Operation.LIST)
+    public ProductPageRecord getProducts(String cursor, Integer size, boolean includeDeleted) {
+        int pageSize = pageSize(productProperties, size);
+        // one extra row tells us whether another page exists without a count query
+        Limit limit = Limit.of(pageSize + 1);
+        List<Product> products;
+        if (cursor == null) {
+            products = includeDeleted
+                    ? productRepository.findByOrderByIdAsc(limit)
+                    : productRepository.findByActiveTrueOrderByIdAsc(limit);
+        } else {
+            ObjectId id = decodeCursorId(cursor);
+            products = includeDeleted
+                    ? productRepository.findByIdGreaterThanOrderByIdAsc(id, limit)
+                    : productRepository.findByActiveTrueAndIdGreaterThanOrderByIdAsc(id, limit);
+        }
+        return keysetPage(products, pageSize);
     }
 
     @Override
-    public void deleteProduct(String id) {
-        Optional<Product> productOpt = productRepository.findById(id);
-        productOpt.ifPresentOrElse((this::deleteProduct), () -> {
-            throw new RecordNotFoundException("Product with ID [" + id + "] not found");
-        });
+    @ProductRead(ProductRead.Operation.LIST)
+    public ProductPageRecord getProducts(String cursor, Integer size, boolean includeDeleted, Set<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return getProducts(cursor, size, includeDeleted);
+        }
+        int pageSize = pageSize(productProperties, size);
+        Query query = pageQuery(cursor == null ? null : decodeCursorId(cursor), includeDeleted);
+        return keysetPage(productRepository.search(project(query, fields).limit(pageSize + 1)), pageSize);
+    }
+
+    @Override
+    @ProductRead(ProductRead.Operation.SEARCH)
+    public ProductPageRecord searchProducts(ProductSearchRecord search, Set<String> fields, String cursor, Integer size,
+                                            boolean includeDeleted) {
+        int pageSize = pageSize(productProperties, size);
+        int offset = searchOffset(productProperties, cursor);
+        Query query = project(searchQuery(search, includeDeleted), fields).skip(offset).limit(pageSize + 1);
+        List<Product> products = productRepository.search(query);
+        String nextCursor = null;
+        if (products.size() > pageSize) {
+            products = products.subList(0, pageSize);
+            nextCursor = encodeCursor(String.valueOf(offset + pageSize));
+        }
+        return new ProductPageRecord(productMapper.productsToProductRecords(products), nextCursor);
+    }
+
+    @Override
+    @ProductRead(ProductRead.Operation.CHANGES)
+    public ProductChangesRecord getChanges(String token, Integer size) {
+        int pageSize = pageSize(productProperties, size);
+        Query query = changesQuery(token, LocalDateTime.now().minus(productProperties.getSync().getSettleTime()))
+                .limit(pageSize + 1);
+        return toChanges(productMapper.productsToProductRecords(productRepository.search(query)), pageSize, token);
+    }
+
+    @Override
+    @ProductRead(ProductRead.Operation.EXPORT)
+    public Stream<ProductRecord> exportProducts(boolean includeDeleted) {
+        return productMapper.productStreamToProductRecords(includeDeleted
+                ? productRepository.streamByOrderByIdAsc() : productRepository.streamByActiveTrueOrderByIdAsc());
+    }
+
+    @Override
+    @CacheEvict(cacheNames = CacheConfig.PRODUCT_CACHE, key = "#id")
+    public void deleteProduct(String id, Long expectedVersion) {
+        if (!productRepository.softDeleteById(id, expectedVersion)) {
+            throw writeConflict(id, expectedVersion);
+        }
+    }
+
+    @Override
+    @CacheEvict(cacheNames = CacheConfig.PRODUCT_CACHE, allEntries = true)
+    public long deleteProducts(List<String> ids) {
+        checkBulkSize(productProperties, ids.size());
+        return productRepository.softDeleteAllById(ids);
+    }
+
+    @Override
+    @CacheEvict(cacheNames = CacheConfig.PRODUCT_CACHE, key = "#id")
+    public ProductRecord restoreProduct(String id, Long expectedVersion) {
+        return productRepository.restore(id, expectedVersion)
+                .map(productMapper::productToProductRecord)
+                .orElseThrow(() -> writeConflict(id, expectedVersion));
+    }
+
+    private RuntimeException writeConflict(String id, Long expectedVersion) {
+        return ProductServiceSupport.writeConflict(id, expectedVersion,
+                expectedVersion != null && productRepository.existsById(id));
+    }
+
+    private ProductPageRecord keysetPage(List<Product> products, int pageSize) {
+        String nextCursor = null;
+        if (products.size() > pageSize) {
+            products = products.subList(0, pageSize);
+            nextCursor = encodeCursor(products.get(pageSize - 1).getId());
+        }
+        return new ProductPageRecord(productMapper.productsToProductRecords(products), nextCursor);
     }
 
-    private void deleteProduct(Product product) {
-        product.setDeletedOn(LocalDateTime.now());
-        product.setActive(false);
-        productRepository.save(product);
+    private void writeChunk(List<Integer> chunkIndexes, List<ProductRecord> productRecords, ProductBulkItemRecord[] results) {
+        LocalDateTime now = bulkNow();
+        List<Product> chunk = productRecords.stream()
+                .map(productRecord -> toBulkProduct(productMapper, productRecord, now))
+                .toList();
+        BulkWriteResult bulkWriteResult;
+        List<BulkWriteError> bulkWriteErrors = List.of();
+        try {
+            bulkWriteResult = productRepository.upsertAll(chunk);
+        } catch (BulkOperationException e) {
+            bulkWriteResult = e.getResult();
+            bulkWriteErrors = e.getErrors();
+        }
+        recordChunkResults(chunkIndexes, chunk, bulkWriteResult, bulkWriteErrors, results);
     }
 }
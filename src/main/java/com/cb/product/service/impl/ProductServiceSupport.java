@@ -0,0 +1,373 @@
+package com.cb.product.service.impl;
+
+import com.cb.product.config.ProductProperties;
+import com.cb.product.entity.Product;
+import com.cb.product.exception.FieldValidationException;
+import com.cb.product.exception.InvalidRequestException;
+import com.cb.product.exception.RecordNotFoundException;
+import com.cb.product.mapper.ProductMapper;
+import com.cb.product.record.ProductBatchRecord;
+import com.cb.product.record.ProductBulkItemRecord;
+import com.cb.product.record.ProductChangesRecord;
+import com.cb.product.record.ProductRecord;
+import com.cb.product.record.ProductSearchRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+// request handling shared by the blocking and the reactive ProductService
+final class ProductServiceSupport {
+
+    // active is left out: a $set of it alone would leave deletedOn behind, restore clears both
+    private static final Set<String> PATCHABLE_FIELDS = Set.of("name", "price", "shortDesc", "longDesc",
+            "thumbnail", "image");
+
+    private static final Set<String> SORTABLE_FIELDS = Set.of("id", "name", "price", "createdOn", "updatedOn");
+
+    private static final Pattern REGEX_METACHARACTERS = Pattern.compile("[\\\\^$.|?*+()\\[\\]{}]");
+
+    private static final Map<String, Class<?>> PRODUCT_RECORD_TYPES = new HashMap<>();
+
+    static {
+        for (RecordComponent component : ProductRecord.class.getRecordComponents()) {
+            PRODUCT_RECORD_TYPES.put(component.getName(), component.getType());
+        }
+    }
+
+    private ProductServiceSupport() {
+    }
+
+    static RecordNotFoundException notFound(String id) {
+        return new RecordNotFoundException("Product with ID [" + id + "] not found");
+    }
+
+    // a conditional write that matched nothing is a stale version (412) when a version was sent and the product is
+    // still there, otherwise the product is missing (404); both services only check existence after such a miss
+    static RuntimeException writeConflict(String id, Long expectedVersion, boolean exists) {
+        if (expectedVersion != null && exists) {
+            return new OptimisticLockingFailureException("Product with ID [" + id + "] does not match version [" + expectedVersion + "]");
+        }
+        return notFound(id);
+    }
+
+    static void checkBulkSize(ProductProperties productProperties, int size) {
+        int maxSize = productProperties.getBulk().getMaxSize();
+        if (size > maxSize) {
+            throw new InvalidRequestException("Bulk request exceeds the limit of " + maxSize + " products");
+        }
+    }
+
+    // active doubles as the soft delete flag, so a product created without it must not start out hidden
+    static void activeByDefault(Product product) {
+        if (product.getActive() == null) {
+            product.setActive(true);
+        }
+    }
+
+    static Map<String, String> validate(Validator validator, ProductRecord productRecord) {
+        if (productRecord == null) {
+            return Map.of("product", "must not be null");
+        }
+        return validator.validate(productRecord).stream()
+                .collect(Collectors.toMap(violation -> violation.getPropertyPath().toString(),
+                        ConstraintViolation::getMessage, (first, second) -> first));
+    }
+
+    // a bulk upsert is written in chunks of bulk.chunk-size, one after another, to bound the in-flight batch; each
+    // chunk is stamped right before it is written, at the precision Mongo keeps, like the write batcher
+    static LocalDateTime bulkNow() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    static Product toBulkProduct(ProductMapper productMapper, ProductRecord productRecord, LocalDateTime now) {
+        Product product = productMapper.productRecordToProduct(productRecord);
+        if (product.getId() == null) {
+            // assign the id up front so every item can be written as an upsert and reported back by id
+            product.setId(new ObjectId().toHexString());
+            product.setCreatedOn(now);
+            activeByDefault(product);
+        }
+        product.setUpdatedOn(now);
+        return product;
+    }
+
+    static void recordChunkResults(List<Integer> chunkIndexes, List<Product> chunk, BulkWriteResult bulkWriteResult,
+                                   List<BulkWriteError> bulkWriteErrors, ProductBulkItemRecord[] results) {
+        Set<Integer> upserted = bulkWriteResult.getUpserts().stream()
+                .map(BulkWriteUpsert::getIndex)
+                .collect(Collectors.toSet());
+        Map<Integer, String> failed = bulkWriteErrors.stream()
+                .collect(Collectors.toMap(BulkWriteError::getIndex, BulkWriteError::getMessage));
+        for (int i = 0; i < chunk.size(); i++) {
+            int index = chunkIndexes.get(i);
+            String id = chunk.get(i).getId();
+            if (failed.containsKey(i)) {
+                results[index] = new ProductBulkItemRecord(index, id, ProductBulkItemRecord.Status.FAILED,
+                        Map.of("product", failed.get(i)));
+            } else {
+                results[index] = new ProductBulkItemRecord(index, id, upserted.contains(i)
+                        ? ProductBulkItemRecord.Status.CREATED : ProductBulkItemRecord.Status.UPDATED, null);
+            }
+        }
+    }
+
+    // products come back in request order with duplicate ids collapsed; ids that were not found are listed as missing
+    static ProductBatchRecord toBatch(List<String> ids, Map<String, ProductRecord> found) {
+        List<ProductRecord> products = new ArrayList<>(found.size());
+        List<String> missing = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(ids)) {
+            ProductRecord productRecord = found.get(id);
+            if (productRecord != null) {
+                products.add(productRecord);
+            } else {
+                missing.add(id);
+            }
+        }
+        return new ProductBatchRecord(products, missing);
+    }
+
+    static Map<String, Object> toPatchValues(ObjectMapper objectMapper, Validator validator, Map<String, Object> fields) {
+        if (fields.isEmpty()) {
+            throw new InvalidRequestException("Patch must contain at least one field");
+        }
+        Map<String, Object> values = new LinkedHashMap<>();
+        Map<String, String> errors = new HashMap<>();
+        fields.forEach((field, rawValue) -> {
+            if (!PATCHABLE_FIELDS.contains(field)) {
+                errors.put(field, "is not a patchable field");
+                return;
+            }
+            Object value;
+            try {
+                value = objectMapper.convertValue(rawValue, PRODUCT_RECORD_TYPES.get(field));
+            } catch (IllegalArgumentException e) {
+                errors.put(field, "has an invalid value");
+                return;
+            }
+            validator.validateValue(ProductRecord.class, field, value).stream()
+                    .findFirst()
+                    .ifPresentOrElse(violation -> errors.put(field, violation.getMessage()),
+                            () -> values.put(field, value));
+        });
+        if (!errors.isEmpty()) {
+            throw new FieldValidationException(errors);
+        }
+        return values;
+    }
+
+    static int pageSize(ProductProperties productProperties, Integer size) {
+        ProductProperties.Page page = productProperties.getPage();
+        if (size == null) {
+            return page.getDefaultSize();
+        }
+        if (size < 1) {
+            throw new InvalidRequestException("Page size must be greater than 0");
+        }
+        return Math.min(size, page.getMaxSize());
+    }
+
+    static String encodeCursor(String id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // ids are stored as ObjectIds, but the query mapper only converts the id for equality and $in; a string bound
+    // for $gt would be compared as a string and match none of them
+    static ObjectId decodeCursorId(String cursor) {
+        String id = decodeCursor(cursor);
+        if (!ObjectId.isValid(id)) {
+            throw new InvalidRequestException("Invalid cursor [" + cursor + "]");
+        }
+        return new ObjectId(id);
+    }
+
+    static String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("Invalid cursor [" + cursor + "]");
+        }
+    }
+
+    static Query searchQuery(ProductSearchRecord search, boolean includeDeleted) {
+        Query query;
+        if (search.text() != null && !search.text().isBlank()) {
+            query = TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(search.text()));
+        } else {
+            query = new Query();
+        }
+        if (search.active() != null) {
+            query.addCriteria(where("active").is(search.active()));
+        } else if (!includeDeleted) {
+            query.addCriteria(where("active").is(true));
+        }
+        if (search.name() != null && !search.name().isEmpty()) {
+            // an anchored, case sensitive prefix is the only regex Mongo can answer from the name index
+            String prefix = REGEX_METACHARACTERS.matcher(search.name()).replaceAll("\\\\$0");
+            query.addCriteria(where("name").regex("^" + prefix));
+        }
+        if (search.minPrice() != null && search.maxPrice() != null && search.minPrice().compareTo(search.maxPrice()) > 0) {
+            throw new InvalidRequestException("minPrice must not be greater than maxPrice");
+        }
+        // the query mapper applies the DECIMAL128 target type of price to a lone $gte, but takes {$gte, $lte} for a
+        // nested document and writes BigDecimal bounds in it as strings, so both bounds are passed as Decimal128
+        range(query, "price", decimal(search.minPrice()), decimal(search.maxPrice()));
+        range(query, "createdOn", search.createdFrom(), search.createdTo());
+        range(query, "updatedOn", search.updatedFrom(), search.updatedTo());
+        Sort sort = searchSort(search.sort());
+        if (sort.isUnsorted() && query instanceof TextQuery textQuery) {
+            textQuery.sortByScore();
+        }
+        // the id makes the order total, so offset pages neither repeat nor skip products
+        return query.with(sort.and(Sort.by("id")));
+    }
+
+    static Sort searchSort(List<String> sort) {
+        if (sort == null) {
+            return Sort.unsorted();
+        }
+        List<Sort.Order> orders = new ArrayList<>();
+        for (String order : sort) {
+            String field = order.startsWith("-") ? order.substring(1) : order;
+            if (!SORTABLE_FIELDS.contains(field)) {
+                throw new InvalidRequestException("Cannot sort by [" + field + "]");
+            }
+            if (field.equals("id")) {
+                // added last as the tiebreaker anyway
+                continue;
+            }
+            orders.add(order.startsWith("-") ? Sort.Order.desc(field) : Sort.Order.asc(field));
+        }
+        return Sort.by(orders);
+    }
+
+    static Query project(Query query, Set<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return query;
+        }
+        for (String field : fields) {
+            if (!PRODUCT_RECORD_TYPES.containsKey(field)) {
+                throw new InvalidRequestException("Unknown field [" + field + "]");
+            }
+        }
+        // ETag and Last-Modified are derived from version and updatedOn, so those are always read
+        query.fields().include(fields.toArray(String[]::new)).include("id", "version", "updatedOn");
+        return query;
+    }
+
+    static Query productQuery(String id, boolean includeDeleted) {
+        Criteria criteria = where("id").is(id);
+        return new Query(includeDeleted ? criteria : criteria.and("active").is(true));
+    }
+
+    // the keyset page the derived getProducts queries read, for when it has to carry a projection
+    static Query pageQuery(ObjectId afterId, boolean includeDeleted) {
+        Query query = new Query();
+        if (!includeDeleted) {
+            query.addCriteria(where("active").is(true));
+        }
+        if (afterId != null) {
+            query.addCriteria(where("id").gt(afterId));
+        }
+        return query.with(Sort.by("id"));
+    }
+
+    // changes in (updatedOn, id) order after the watermark in the token; the id breaks ties between equal timestamps
+    static Query changesQuery(String token, LocalDateTime settledBefore) {
+        Query query = new Query(where("updatedOn").lt(settledBefore));
+        if (token != null) {
+            String[] watermark = decodeCursor(token).split(",", 2);
+            LocalDateTime updatedOn;
+            try {
+                updatedOn = LocalDateTime.parse(watermark[0]);
+            } catch (DateTimeParseException e) {
+                throw new InvalidRequestException("Invalid token [" + token + "]");
+            }
+            if (watermark.length < 2 || !ObjectId.isValid(watermark[1])) {
+                throw new InvalidRequestException("Invalid token [" + token + "]");
+            }
+            query.addCriteria(new Criteria().orOperator(where("updatedOn").gt(updatedOn),
+                    where("updatedOn").is(updatedOn).and("id").gt(new ObjectId(watermark[1]))));
+        }
+        return query.with(Sort.by("updatedOn", "id"));
+    }
+
+    // deleted products go out as tombstones, a client only needs to know which id to drop
+    static ProductChangesRecord toChanges(List<ProductRecord> productRecords, int pageSize, String token) {
+        boolean more = productRecords.size() > pageSize;
+        List<ProductRecord> page = more ? productRecords.subList(0, pageSize) : productRecords;
+        if (page.isEmpty()) {
+            return new ProductChangesRecord(page, token, false);
+        }
+        ProductRecord last = page.get(page.size() - 1);
+        return new ProductChangesRecord(page.stream()
+                .map(productRecord -> Boolean.TRUE.equals(productRecord.active()) ? productRecord
+                        : new ProductRecord(productRecord.id(), null, null, null, null, null, null, null,
+                        productRecord.updatedOn(), productRecord.deletedOn(), false, productRecord.version()))
+                .toList(), encodeCursor(last.updatedOn() + "," + last.id()), more);
+    }
+
+    static int searchOffset(ProductProperties productProperties, String cursor) {
+        if (cursor == null) {
+            return 0;
+        }
+        int offset;
+        try {
+            offset = Integer.parseInt(decodeCursor(cursor));
+        } catch (NumberFormatException e) {
+            throw new InvalidRequestException("Invalid cursor [" + cursor + "]");
+        }
+        if (offset < 0 || offset > productProperties.getPage().getMaxOffset()) {
+            throw new InvalidRequestException("Search cannot page past " + productProperties.getPage().getMaxOffset()
+                    + " products, narrow the filters instead");
+        }
+        return offset;
+    }
+
+    private static void range(Query query, String field, Object from, Object to) {
+        if (from == null && to == null) {
+            return;
+        }
+        Criteria criteria = where(field);
+        if (from != null) {
+            criteria.gte(from);
+        }
+        if (to != null) {
+            criteria.lte(to);
+        }
+        query.addCriteria(criteria);
+    }
+
+    private static Decimal128 decimal(BigDecimal value) {
+        return value == null ? null : new Decimal128(value);
+    }
+}
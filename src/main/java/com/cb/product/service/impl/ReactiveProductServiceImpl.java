@@ -0,0 +1,276 @@
+package com.cb.product.service.impl;
+
+import com.cb.product.config.ProductProperties;
+import com.cb.product.entity.Product;
+import com.cb.product.mapper.ProductMapper;
+import com.cb.product.record.ProductBatchRecord;
+import com.cb.product.record.ProductBulkItemRecord;
+import com.cb.product.record.ProductChangesRecord;
+import com.cb.product.record.ProductPageRecord;
+import com.cb.product.record.ProductRecord;
+import com.cb.product.record.ProductSearchRecord;
+import com.cb.product.record.ProductStampRecord;
+import com.cb.product.repository.ReactiveProductRepository;
+import com.cb.product.service.ReactiveProductService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoBulkWriteException;
+import jakarta.validation.Validator;
+import lombok.AllArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.cb.product.service.impl.ProductServiceSupport.*;
+
+@Service
+@AllArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveProductServiceImpl implements ReactiveProductService {
+
+    final ReactiveProductRepository reactiveProductRepository;
+
+    final ProductMapper productMapper;
+
+    final ProductProperties productProperties;
+
+    final Validator validator;
+
+    final ObjectMapper objectMapper;
+
+    @Override
+    public Mono<ProductRecord> save(ProductRecord productRecord) {
+        Product product = productMapper.productRecordToProduct(productRecord);
+        if (product.getId() == null) {
+            // a new product has no prior version to check; a null version makes save insert it with version 0
+            product.setVersion(null);
+            activeByDefault(product);
+            return reactiveProductRepository.save(product)
+                    .map(productMapper::productToProductRecord);
+        }
+        return reactiveProductRepository.replace(product)
+                .map(productMapper::productToProductRecord)
+                .switchIfEmpty(writeConflict(productRecord.id(), productRecord.version()));
+    }
+
+    @Override
+    public Mono<List<ProductBulkItemRecord>> bulkUpsert(List<ProductRecord> productRecords) {
+        return Mono.defer(() -> {
+            checkBulkSize(productProperties, productRecords.size());
+            int chunkSize = productProperties.getBulk().getChunkSize();
+            ProductBulkItemRecord[] results = new ProductBulkItemRecord[productRecords.size()];
+            List<Integer> indexes = new ArrayList<>();
+            List<ProductRecord> products = new ArrayList<>();
+            for (int index = 0; index < productRecords.size(); index++) {
+                ProductRecord productRecord = productRecords.get(index);
+                Map<String, String> errors = validate(validator, productRecord);
+                if (!errors.isEmpty()) {
+                    results[index] = new ProductBulkItemRecord(index, productRecord == null ? null : productRecord.id(),
+                            ProductBulkItemRecord.Status.FAILED, errors);
+                    continue;
+                }
+                indexes.add(index);
+                products.add(productRecord);
+            }
+            return Flux.range(0, (products.size() + chunkSize - 1) / chunkSize)
+                    .concatMap(chunk -> {
+                        int from = chunk * chunkSize;
+                        int to = Math.min(from + chunkSize, products.size());
+                        return writeChunk(indexes.subList(from, to), products.subList(from, to), results);
+                    })
+                    .then(Mono.fromSupplier(() -> Arrays.asList(results)));
+        });
+    }
+
+    @Override
+    public Mono<ProductRecord> patchProduct(String id, Map<String, Object> fields, Long expectedVersion) {
+        return Mono.fromSupplier(() -> toPatchValues(objectMapper, validator, fields))
+                .flatMap(values -> reactiveProductRepository.patch(id, values, expectedVersion))
+                .map(productMapper::productToProductRecord)
+                .switchIfEmpty(writeConflict(id, expectedVersion));
+    }
+
+    @Override
+    public Mono<ProductRecord> getProduct(String id, boolean includeDeleted) {
+        return (includeDeleted ? reactiveProductRepository.findById(id) : reactiveProductRepository.findByIdAndActiveTrue(id))
+                .map(productMapper::productToProductRecord)
+                .switchIfEmpty(Mono.error(() -> notFound(id)));
+    }
+
+    @Override
+    public Mono<ProductRecord> getProduct(String id, boolean includeDeleted, Set<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return getProduct(id, includeDeleted);
+        }
+        return Mono.fromSupplier(() -> project(productQuery(id, includeDeleted), fields).limit(1))
+                .flatMap(query -> reactiveProductRepository.search(query).next())
+                .map(productMapper::productToProductRecord)
+                .switchIfEmpty(Mono.error(() -> notFound(id)));
+    }
+
+    @Override
+    public Mono<ProductBatchRecord> getProductsByIds(List<String> ids, boolean includeDeleted) {
+        return Mono.defer(() -> {
+            checkBulkSize(productProperties, ids.size());
+            Set<String> uniqueIds = new LinkedHashSet<>(ids);
+            return (includeDeleted
+                    ? reactiveProductRepository.findAllById(uniqueIds)
+                    : reactiveProductRepository.findByIdInAndActiveTrue(uniqueIds))
+                    .map(productMapper::productToProductRecord)
+                    .collectMap(ProductRecord::id)
+                    .map(found -> toBatch(ids, found));
+        });
+    }
+
+    @Override
+    public Mono<ProductStampRecord> getProductStamp(String id, boolean includeDeleted) {
+        return (includeDeleted ? reactiveProductRepository.findStampById(id) : reactiveProductRepository.findStampByIdAndActiveTrue(id))
+                .switchIfEmpty(Mono.error(() -> notFound(id)));
+    }
+
+    @Override
+    public Mono<ProductPageRecord> getProducts(String cursor, Integer size, boolean includeDeleted) {
+        return Mono.defer(() -> {
+            int pageSize = pageSize(productProperties, size);
+            // one extra row tells us whether another page exists without a count query
+            Limit limit = Limit.of(pageSize + 1);
+            Flux<Product> products;
+            if (cursor == null) {
+                products = includeDeleted
+                        ? reactiveProductRepository.findByOrderByIdAsc(limit)
+                        : reactiveProductRepository.findByActiveTrueOrderByIdAsc(limit);
+            } else {
+                ObjectId id = decodeCursorId(cursor);
+                products = includeDeleted
+                        ? reactiveProductRepository.findByIdGreaterThanOrderByIdAsc(id, limit)
+                        : reactiveProductRepository.findByActiveTrueAndIdGreaterThanOrderByIdAsc(id, limit);
+            }
+            return products.collectList().map(page -> keysetPage(page, pageSize));
+        });
+    }
+
+    @Override
+    public Mono<ProductPageRecord> getProducts(String cursor, Integer size, boolean includeDeleted, Set<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return getProducts(cursor, size, includeDeleted);
+        }
+        return Mono.defer(() -> {
+            int pageSize = pageSize(productProperties, size);
+            Query query = pageQuery(cursor == null ? null : decodeCursorId(cursor), includeDeleted);
+            return reactiveProductRepository.search(project(query, fields).limit(pageSize + 1)).collectList()
+                    .map(page -> keysetPage(page, pageSize));
+        });
+    }
+
+    @Override
+    public Mono<ProductPageRecord> searchProducts(ProductSearchRecord search, Set<String> fields, String cursor,
+                                                  Integer size, boolean includeDeleted) {
+        return Mono.defer(() -> {
+            int pageSize = pageSize(productProperties, size);
+            int offset = searchOffset(productProperties, cursor);
+            Query query = project(searchQuery(search, includeDeleted), fields).skip(offset).limit(pageSize + 1);
+            return reactiveProductRepository.search(query).collectList().map(page -> {
+                String nextCursor = null;
+                if (page.size() > pageSize) {
+                    page = page.subList(0, pageSize);
+                    nextCursor = encodeCursor(String.valueOf(offset + pageSize));
+                }
+                return new ProductPageRecord(productMapper.productsToProductRecords(page), nextCursor);
+            });
+        });
+    }
+
+    @Override
+    public Mono<ProductChangesRecord> getChanges(String token, Integer size) {
+        return Mono.defer(() -> {
+            int pageSize = pageSize(productProperties, size);
+            Query query = changesQuery(token, LocalDateTime.now().minus(productProperties.getSync().getSettleTime()))
+                    .limit(pageSize + 1);
+            return reactiveProductRepository.search(query).collectList()
+                    .map(products -> toChanges(productMapper.productsToProductRecords(products), pageSize, token));
+        });
+    }
+
+    @Override
+    public Flux<ProductRecord> exportProducts(boolean includeDeleted) {
+        return productMapper.productFluxToProductRecords(includeDeleted
+                ? reactiveProductRepository.findByOrderByIdAsc() : reactiveProductRepository.findByActiveTrueOrderByIdAsc());
+    }
+
+    @Override
+    public Mono<Void> deleteProduct(String id, Long expectedVersion) {
+        return reactiveProductRepository.softDeleteById(id, expectedVersion)
+                .flatMap(deleted -> deleted ? Mono.<Void>empty() : writeConflict(id, expectedVersion));
+    }
+
+    @Override
+    public Mono<Long> deleteProducts(List<String> ids) {
+        return Mono.fromRunnable(() -> checkBulkSize(productProperties, ids.size()))
+                .then(reactiveProductRepository.softDeleteAllById(ids));
+    }
+
+    @Override
+    public Mono<ProductRecord> restoreProduct(String id, Long expectedVersion) {
+        return reactiveProductRepository.restore(id, expectedVersion)
+                .map(productMapper::productToProductRecord)
+                .switchIfEmpty(writeConflict(id, expectedVersion));
+    }
+
+    // deferred until the conditional write has missed
+    private <T> Mono<T> writeConflict(String id, Long expectedVersion) {
+        return Mono.defer(() -> expectedVersion == null ? Mono.just(false) : reactiveProductRepository.existsById(id))
+                .flatMap(found -> Mono.error(ProductServiceSupport.writeConflict(id, expectedVersion, found)));
+    }
+
+    private ProductPageRecord keysetPage(List<Product> page, int pageSize) {
+        String nextCursor = null;
+        if (page.size() > pageSize) {
+            page = page.subList(0, pageSize);
+            nextCursor = encodeCursor(page.get(pageSize - 1).getId());
+        }
+        return new ProductPageRecord(productMapper.productsToProductRecords(page), nextCursor);
+    }
+
+    private Mono<Void> writeChunk(List<Integer> chunkIndexes, List<ProductRecord> productRecords, ProductBulkItemRecord[] results) {
+        return Mono.defer(() -> {
+            LocalDateTime now = bulkNow();
+            List<Product> chunk = productRecords.stream()
+                    .map(productRecord -> toBulkProduct(productMapper, productRecord, now))
+                    .toList();
+            return upsertChunk(chunkIndexes, chunk, results);
+        });
+    }
+
+    private Mono<Void> upsertChunk(List<Integer> chunkIndexes, List<Product> chunk, ProductBulkItemRecord[] results) {
+        return reactiveProductRepository.upsertAll(chunk)
+                .doOnNext(bulkWriteResult -> recordChunkResults(chunkIndexes, chunk, bulkWriteResult, List.of(), results))
+                .onErrorResume(BulkOperationException.class, e -> Mono.fromRunnable(() ->
+                        recordChunkResults(chunkIndexes, chunk, e.getResult(), e.getErrors(), results)))
+                // the reactive template can surface write errors untranslated or wrapped, e.g. as DuplicateKeyException
+                .onErrorResume(e -> bulkWriteException(e) != null, e -> Mono.fromRunnable(() -> {
+                    MongoBulkWriteException bulkWriteException = bulkWriteException(e);
+                    recordChunkResults(chunkIndexes, chunk, bulkWriteException.getWriteResult(),
+                            bulkWriteException.getWriteErrors(), results);
+                }))
+                .then();
+    }
+
+    private static MongoBulkWriteException bulkWriteException(Throwable e) {
+        if (e instanceof MongoBulkWriteException bulkWriteException) {
+            return bulkWriteException;
+        }
+        return e.getCause() instanceof MongoBulkWriteException bulkWriteException ? bulkWriteException : null;
+    }
+}
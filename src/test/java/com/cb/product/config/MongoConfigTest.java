@@ -0,0 +1,50 @@
+package com.cb.product.config;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.connection.ConnectionPoolSettings;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MongoConfigTest {
+
+    @Test
+    void applyPoolTest() {
+        ProductProperties.Pool pool = new ProductProperties.Pool();
+        pool.setMaxSize(200);
+        pool.setMaxConnecting(8);
+        pool.setMaxWaitTime(Duration.ofSeconds(2));
+        ConnectionPoolSettings.Builder builder = ConnectionPoolSettings.builder();
+
+        MongoConfig.applyPool(pool, builder);
+        ConnectionPoolSettings settings = builder.build();
+
+        assertEquals(200, settings.getMaxSize());
+        assertEquals(8, settings.getMaxConnecting());
+        assertEquals(2000, settings.getMaxWaitTime(TimeUnit.MILLISECONDS));
+        assertEquals(ConnectionPoolSettings.builder().build().getMinSize(), settings.getMinSize());
+    }
+
+    @Test
+    void applySettingsTest() {
+        ProductProperties.Mongo mongo = new ProductProperties.Mongo();
+        mongo.setConnectTimeout(Duration.ofSeconds(5));
+        mongo.setReadTimeout(Duration.ofSeconds(10));
+        mongo.setServerSelectionTimeout(Duration.ofSeconds(3));
+        mongo.getPool().setMaxConnectionIdleTime(Duration.ofMinutes(5));
+        MongoClientSettings.Builder builder = MongoClientSettings.builder();
+
+        MongoConfig.applySettings(mongo, builder);
+        MongoClientSettings settings = builder.build();
+
+        assertEquals(5000, settings.getSocketSettings().getConnectTimeout(TimeUnit.MILLISECONDS));
+        assertEquals(10000, settings.getSocketSettings().getReadTimeout(TimeUnit.MILLISECONDS));
+        assertEquals(3000, settings.getClusterSettings().getServerSelectionTimeout(TimeUnit.MILLISECONDS));
+        assertEquals(300000, settings.getConnectionPoolSettings().getMaxConnectionIdleTime(TimeUnit.MILLISECONDS));
+        assertEquals(MongoClientSettings.builder().build().getConnectionPoolSettings().getMaxSize(),
+                settings.getConnectionPoolSettings().getMaxSize());
+    }
+}
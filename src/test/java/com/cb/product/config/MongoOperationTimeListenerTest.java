@@ -0,0 +1,40 @@
+package com.cb.product.config;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MongoOperationTimeListenerTest {
+
+    final ConnectionDescription connection = new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()));
+
+    final MongoOperationTimeListener listener = new MongoOperationTimeListener();
+
+    void command(String commandName, BsonTimestamp operationTime) {
+        listener.commandSucceeded(new CommandSucceededEvent(null, 1, 1, connection, "CB_PRODUCT_DB", commandName,
+                new BsonDocument("operationTime", operationTime), 1000));
+    }
+
+    @Test
+    void latestWriteTimeKeptTest() {
+        command("update", new BsonTimestamp(1700000000, 2));
+        command("insert", new BsonTimestamp(1700000000, 1));
+
+        assertEquals(new BsonTimestamp(1700000000, 2), listener.operationTime());
+    }
+
+    @Test
+    void readsIgnoredTest() {
+        command("find", new BsonTimestamp(1700000000, 1));
+
+        assertNull(listener.operationTime());
+    }
+}
@@ -0,0 +1,53 @@
+package com.cb.product.config;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionId;
+import com.mongodb.connection.ConnectionPoolSettings;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolClosedEvent;
+import com.mongodb.event.ConnectionPoolCreatedEvent;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MongoPoolMetricsListenerTest {
+
+    final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    final MongoPoolMetricsListener listener = new MongoPoolMetricsListener(meterRegistry);
+
+    final ServerId serverId = new ServerId(new ClusterId(), new ServerAddress());
+
+    @Test
+    void checkoutWaitRecordedTest() {
+        listener.connectionCheckedOut(new ConnectionCheckedOutEvent(new ConnectionId(serverId), 1,
+                Duration.ofMillis(40).toNanos()));
+        listener.connectionCheckOutFailed(new ConnectionCheckOutFailedEvent(serverId, 2,
+                ConnectionCheckOutFailedEvent.Reason.TIMEOUT, Duration.ofSeconds(2).toNanos()));
+
+        Timer checkedOut = meterRegistry.get("mongodb.driver.pool.checkout").tag("outcome", "SUCCESS").timer();
+        Timer timedOut = meterRegistry.get("mongodb.driver.pool.checkout").tag("outcome", "TIMEOUT").timer();
+        assertEquals(40, checkedOut.totalTime(TimeUnit.MILLISECONDS));
+        assertEquals(2000, timedOut.totalTime(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void maxSizeGaugeFollowsPoolTest() {
+        listener.connectionPoolCreated(new ConnectionPoolCreatedEvent(serverId,
+                ConnectionPoolSettings.builder().maxSize(200).build()));
+
+        assertEquals(200, meterRegistry.get("mongodb.driver.pool.maxsize").gauge().value());
+
+        listener.connectionPoolClosed(new ConnectionPoolClosedEvent(serverId));
+        assertNull(meterRegistry.find("mongodb.driver.pool.maxsize").gauge());
+    }
+}
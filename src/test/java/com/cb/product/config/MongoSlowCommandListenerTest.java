@@ -0,0 +1,50 @@
+package com.cb.product.config;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(OutputCaptureExtension.class)
+class MongoSlowCommandListenerTest {
+
+    final ConnectionDescription connection = new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()));
+
+    final MongoSlowCommandListener listener = new MongoSlowCommandListener(Duration.ofMillis(100));
+
+    void command(int requestId, long elapsedMillis) {
+        listener.commandStarted(new CommandStartedEvent(null, 1, requestId, connection, "CB_PRODUCT_DB", "find",
+                new BsonDocument("find", new BsonString("CB_PRODUCT"))));
+        listener.commandSucceeded(new CommandSucceededEvent(null, 1, requestId, connection, "CB_PRODUCT_DB", "find",
+                new BsonDocument(), Duration.ofMillis(elapsedMillis).toNanos()));
+    }
+
+    @Test
+    void slowCommandLoggedTest(CapturedOutput output) {
+        command(1, 250);
+
+        assertTrue(output.getOut().contains("Slow Mongo command find on CB_PRODUCT_DB.CB_PRODUCT succeeded after 250 ms"));
+        assertTrue(listener.collections.isEmpty());
+    }
+
+    @Test
+    void fastCommandNotLoggedTest(CapturedOutput output) {
+        command(2, 5);
+
+        assertFalse(output.getOut().contains("Slow Mongo command"));
+        assertTrue(listener.collections.isEmpty());
+    }
+}
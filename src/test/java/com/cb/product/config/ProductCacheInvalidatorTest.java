@@ -0,0 +1,124 @@
+package com.cb.product.config;
+
+import com.cb.product.record.ProductRecord;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ProductCacheInvalidatorTest {
+
+    ProductCacheInvalidator productCacheInvalidator;
+
+    Cache cache;
+
+    ProductRecord productRecord;
+
+    @BeforeEach
+    void setup() {
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(CacheConfig.PRODUCT_CACHE);
+        cache = cacheManager.getCache(CacheConfig.PRODUCT_CACHE);
+        productCacheInvalidator = new ProductCacheInvalidator(null, cacheManager,
+                new ProductProperties.CacheInvalidation());
+        productRecord = new ProductRecord("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", "", "", "",
+                null, null, null, true);
+        cache.put("6590722a46eb225aac1cfd22", productRecord);
+        cache.put("6590722a46eb225aac1cfd23", productRecord);
+    }
+
+    ChangeStreamDocument<Document> change(String operationType, BsonDocument documentKey) {
+        return new ChangeStreamDocument<>(operationType, new BsonDocument("_data", new BsonString(operationType)),
+                null, null, null, null, documentKey, null, null, null, null, null, null, null);
+    }
+
+    @Test
+    void applyEvictsChangedProductTest() {
+        ChangeStreamDocument<Document> update = change("update",
+                new BsonDocument("_id", new BsonObjectId(new ObjectId("6590722a46eb225aac1cfd22"))));
+
+        assertTrue(productCacheInvalidator.apply(update));
+
+        assertNull(cache.get("6590722a46eb225aac1cfd22"));
+        assertNotNull(cache.get("6590722a46eb225aac1cfd23"));
+        assertEquals(update.getResumeToken(), productCacheInvalidator.resumeToken);
+    }
+
+    @Test
+    void applyClearsCacheOnDropTest() {
+        assertTrue(productCacheInvalidator.apply(change("drop", null)));
+        assertNull(cache.get("6590722a46eb225aac1cfd23"));
+
+        cache.put("6590722a46eb225aac1cfd22", productRecord);
+        // the stream ends after an invalidate and has to be opened again
+        assertFalse(productCacheInvalidator.apply(change("invalidate", null)));
+        assertNull(cache.get("6590722a46eb225aac1cfd22"));
+    }
+
+    @Test
+    void applyEvictsNonObjectIdTest() {
+        cache.put("legacy-1", productRecord);
+        cache.put("42", productRecord);
+
+        assertTrue(productCacheInvalidator.apply(change("delete", new BsonDocument("_id", new BsonString("legacy-1")))));
+        assertTrue(productCacheInvalidator.apply(change("replace", new BsonDocument("_id", new BsonInt32(42)))));
+
+        assertNull(cache.get("legacy-1"));
+        assertNull(cache.get("42"));
+        assertNotNull(cache.get("6590722a46eb225aac1cfd22"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void listenResumesAfterFailedEventTest() {
+        ProductProperties.CacheInvalidation properties = new ProductProperties.CacheInvalidation();
+        properties.setRetryDelay(Duration.ZERO);
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> failing = mock(MongoChangeStreamCursor.class);
+        when(failing.tryNext()).thenThrow(new IllegalStateException("unreadable event"));
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> reopened = mock(MongoChangeStreamCursor.class);
+        ChangeStreamIterable<Document> changes = mock(ChangeStreamIterable.class);
+        when(changes.cursor()).thenReturn(failing, reopened);
+
+        ProductCacheInvalidator listener = new ProductCacheInvalidator(null,
+                new ConcurrentMapCacheManager(CacheConfig.PRODUCT_CACHE), properties) {
+            @Override
+            ChangeStreamIterable<Document> watch() {
+                return changes;
+            }
+
+            @Override
+            void saveToken(boolean force) {
+            }
+
+            @Override
+            String collectionName() {
+                return "CB_PRODUCT";
+            }
+        };
+        when(reopened.tryNext()).thenAnswer(invocation -> {
+            listener.running = false;
+            return null;
+        });
+        listener.running = true;
+
+        listener.listen();
+
+        verify(failing).close();
+        verify(reopened).tryNext();
+    }
+}
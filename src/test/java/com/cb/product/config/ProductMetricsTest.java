@@ -0,0 +1,139 @@
+package com.cb.product.config;
+
+import com.cb.product.entity.Product;
+import com.cb.product.exception.RecordNotFoundException;
+import com.cb.product.mapper.ProductMapper;
+import com.cb.product.mapper.ProductMapperImpl;
+import com.cb.product.record.ProductPageRecord;
+import com.cb.product.record.ProductRecord;
+import com.cb.product.service.ProductService;
+import com.cb.product.service.ReactiveProductService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProductMetricsTest {
+
+    SimpleMeterRegistry meterRegistry;
+
+    ProductMetrics productMetrics;
+
+    ProductRecord productRecord;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        productMetrics = new ProductMetrics(meterRegistry);
+        productRecord = new ProductRecord("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", "", "", "",
+                null, null, null, true);
+    }
+
+    <T> T proxy(T target, Class<T> type) {
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(target);
+        proxyFactory.addInterface(type);
+        proxyFactory.addAspect(productMetrics);
+        return proxyFactory.getProxy();
+    }
+
+    @Test
+    void serviceCallsTimedByOutcomeTest() {
+        ProductService productService = mock(ProductService.class);
+        when(productService.getProduct("6590722a46eb225aac1cfd22", false)).thenReturn(productRecord);
+        when(productService.getProduct("missing", false)).thenThrow(new RecordNotFoundException("missing"));
+        ProductService timed = proxy(productService, ProductService.class);
+
+        timed.getProduct("6590722a46eb225aac1cfd22", false);
+        assertThrows(RecordNotFoundException.class, () -> timed.getProduct("missing", false));
+
+        assertEquals(1, meterRegistry.get("product.service").tags("class", "ProductService", "method", "getProduct",
+                "outcome", "SUCCESS").timer().count());
+        assertEquals(1, meterRegistry.get("product.service").tags("class", "ProductService", "method", "getProduct",
+                "outcome", "NOT_FOUND").timer().count());
+    }
+
+    @Test
+    void resultSizeRecordedTest() {
+        ProductService productService = mock(ProductService.class);
+        when(productService.getProducts(null, null, false))
+                .thenReturn(new ProductPageRecord(List.of(productRecord, productRecord), null));
+        when(productService.exportProducts(false)).thenReturn(Stream.of(productRecord, productRecord, productRecord));
+        ProductService timed = proxy(productService, ProductService.class);
+
+        timed.getProducts(null, null, false);
+        try (Stream<ProductRecord> export = timed.exportProducts(false)) {
+            assertEquals(3, export.toList().size());
+            assertTrue(meterRegistry.find("product.service").tags("method", "exportProducts").timers().isEmpty());
+        }
+
+        assertEquals(2, meterRegistry.get("product.service.results").tags("method", "getProducts").summary()
+                .totalAmount());
+        assertEquals(3, meterRegistry.get("product.service.results").tags("method", "exportProducts").summary()
+                .totalAmount());
+        assertEquals(1, meterRegistry.get("product.service").tags("method", "exportProducts", "outcome", "SUCCESS")
+                .timer().count());
+    }
+
+    @Test
+    void exportOutcomeFromTerminationTest() {
+        ProductService productService = mock(ProductService.class);
+        when(productService.exportProducts(false))
+                .thenReturn(Stream.of(productRecord, productRecord).<ProductRecord>map(record -> {
+                    throw new IllegalStateException("cursor lost");
+                }))
+                .thenReturn(Stream.of(productRecord, productRecord));
+        ProductService timed = proxy(productService, ProductService.class);
+
+        try (Stream<ProductRecord> export = timed.exportProducts(false)) {
+            assertThrows(IllegalStateException.class, export::toList);
+        }
+        try (Stream<ProductRecord> export = timed.exportProducts(false)) {
+            export.iterator().next();
+        }
+
+        assertEquals(1, meterRegistry.get("product.service").tags("method", "exportProducts", "outcome", "ERROR")
+                .timer().count());
+        assertEquals(1, meterRegistry.get("product.service").tags("method", "exportProducts", "outcome", "CANCELLED")
+                .timer().count());
+        assertTrue(meterRegistry.find("product.service").tags("outcome", "SUCCESS").timers().isEmpty());
+        assertTrue(meterRegistry.find("product.service.results").summaries().isEmpty());
+    }
+
+    @Test
+    void exportNotTimedPerProductTest() {
+        ProductMapper mapper = proxy(new ProductMapperImpl(), ProductMapper.class);
+        Product product = mapper.productRecordToProduct(productRecord);
+
+        assertEquals(3, mapper.productStreamToProductRecords(Stream.of(product, product, product)).count());
+
+        assertEquals(1, meterRegistry.get("product.mapper").timer().count());
+        assertEquals(1, meterRegistry.get("product.mapper").tags("method", "productRecordToProduct").timer().count());
+    }
+
+    @Test
+    void reactiveCallsTimedOnCompletionTest() {
+        ReactiveProductService productService = mock(ReactiveProductService.class);
+        when(productService.exportProducts(false)).thenReturn(Flux.just(productRecord, productRecord));
+        ReactiveProductService timed = proxy(productService, ReactiveProductService.class);
+
+        Flux<ProductRecord> export = timed.exportProducts(false);
+        assertTrue(meterRegistry.find("product.service").timers().isEmpty());
+        StepVerifier.create(export).expectNextCount(2).verifyComplete();
+
+        assertEquals(1, meterRegistry.get("product.service").tags("class", "ReactiveProductService",
+                "method", "exportProducts", "outcome", "SUCCESS").timer().count());
+        assertEquals(2, meterRegistry.get("product.service.results").tags("method", "exportProducts").summary()
+                .totalAmount());
+    }
+}
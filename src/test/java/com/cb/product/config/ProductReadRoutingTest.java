@@ -0,0 +1,153 @@
+package com.cb.product.config;
+
+import com.cb.product.entity.Product;
+import com.cb.product.exception.InvalidRequestException;
+import com.cb.product.mapper.ProductMapperImpl;
+import com.cb.product.repository.ProductRepository;
+import com.cb.product.service.ProductService;
+import com.cb.product.service.impl.ProductServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.ClientSession;
+import jakarta.validation.Validation;
+import org.bson.BsonTimestamp;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ProductReadRoutingTest {
+
+    ProductRepository productRepository;
+    MongoDatabaseFactory mongoDatabaseFactory;
+    MongoOperationTimeListener operationTimeListener;
+    ProductProperties productProperties;
+    ProductService productService;
+    MockHttpServletRequest request;
+    MockHttpServletResponse response;
+    List<ProductReadRouting.Route> routes;
+    Product product;
+
+    @BeforeEach
+    void setup() {
+        productRepository = mock(ProductRepository.class);
+        mongoDatabaseFactory = mock(MongoDatabaseFactory.class);
+        operationTimeListener = new MongoOperationTimeListener();
+        productProperties = new ProductProperties();
+        ProductServiceImpl target = new ProductServiceImpl(productRepository, new ProductMapperImpl(),
+                productProperties, Validation.buildDefaultValidatorFactory().getValidator(), new ObjectMapper(),
+                new ConcurrentMapCacheManager(CacheConfig.PRODUCT_CACHE));
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(target);
+        proxyFactory.addInterface(ProductService.class);
+        proxyFactory.addAspect(new ProductReadRouting(productProperties, mongoDatabaseFactory, operationTimeListener));
+        productService = proxyFactory.getProxy();
+
+        request = new MockHttpServletRequest();
+        response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+        routes = new ArrayList<>();
+        product = new Product("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", "", "", "", null, null, null, true);
+        when(productRepository.findByActiveTrueOrderByIdAsc(any())).thenAnswer(invocation -> {
+            routes.add(ProductReadRouting.current());
+            return List.of(product);
+        });
+        when(productRepository.findByIdAndActiveTrue("6590722a46eb225aac1cfd22")).thenAnswer(invocation -> {
+            routes.add(ProductReadRouting.current());
+            return Optional.of(product);
+        });
+    }
+
+    @AfterEach
+    void cleanup() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void readsRoutedByKindTest() {
+        productService.getProducts(null, null, false);
+        productService.getProduct("6590722a46eb225aac1cfd22", false);
+
+        assertEquals(ReadPreference.secondaryPreferred(), routes.get(0).readPreference());
+        assertEquals(ReadPreference.primary(), routes.get(1).readPreference());
+        assertNull(routes.get(0).session());
+        assertNull(ProductReadRouting.current());
+        verifyNoInteractions(mongoDatabaseFactory);
+    }
+
+    @Test
+    void readAfterTokenStartsCausalSessionTest() {
+        ClientSession session = mock(ClientSession.class);
+        when(mongoDatabaseFactory.getSession(any())).thenReturn(session);
+        request.addHeader(ProductReadRouting.READ_AFTER_HEADER, Long.toString(new BsonTimestamp(1700000000, 3).getValue()));
+
+        productService.getProducts(null, null, false);
+        productService.getProduct("6590722a46eb225aac1cfd22", false);
+
+        assertSame(session, routes.get(0).session());
+        // a primary read sees every acknowledged write without a session
+        assertNull(routes.get(1).session());
+        verify(session, times(1)).advanceOperationTime(new BsonTimestamp(1700000000, 3));
+        verify(session, times(1)).close();
+    }
+
+    @Test
+    void exportSessionClosedWithStreamTest() {
+        ClientSession session = mock(ClientSession.class);
+        when(mongoDatabaseFactory.getSession(any())).thenReturn(session);
+        when(productRepository.streamByActiveTrueOrderByIdAsc()).thenReturn(Stream.of(product));
+        request.addHeader(ProductReadRouting.READ_AFTER_HEADER, Long.toString(new BsonTimestamp(1700000000, 3).getValue()));
+
+        Stream<?> export = productService.exportProducts(false);
+        verify(session, never()).close();
+        export.close();
+
+        verify(session, times(1)).close();
+    }
+
+    @Test
+    void invalidReadAfterTokenTest() {
+        request.addHeader(ProductReadRouting.READ_AFTER_HEADER, "yesterday");
+
+        assertThrows(InvalidRequestException.class, () -> productService.getProducts(null, null, false));
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void writeIssuesReadAfterTokenTest() {
+        operationTimeListener.operationTime.set(new BsonTimestamp(1700000000, 5).getValue());
+        when(productRepository.softDeleteById("6590722a46eb225aac1cfd22", null)).thenReturn(true);
+
+        productService.deleteProduct("6590722a46eb225aac1cfd22", null);
+
+        assertEquals(Long.toString(new BsonTimestamp(1700000000, 5).getValue()),
+                response.getHeader(ProductReadRouting.READ_AFTER_HEADER));
+    }
+
+    @Test
+    void maxStalenessAppliedToSecondaryReadsTest() {
+        assertEquals(ReadPreference.primary(),
+                ProductReadRouting.readPreference(ProductProperties.ReadTarget.PRIMARY, Duration.ofSeconds(90)));
+        assertEquals(ReadPreference.secondaryPreferred(90, TimeUnit.SECONDS),
+                ProductReadRouting.readPreference(ProductProperties.ReadTarget.SECONDARY_PREFERRED,
+                        Duration.ofSeconds(90)));
+    }
+}
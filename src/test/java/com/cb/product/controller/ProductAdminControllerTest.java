@@ -0,0 +1,70 @@
+package com.cb.product.controller;
+
+import com.cb.product.record.ProductIndexStatsRecord;
+import com.cb.product.record.ProductQueryPlanRecord;
+import com.cb.product.service.ProductAdminService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@ExtendWith(SpringExtension.class)
+@WebMvcTest(ProductAdminController.class)
+class ProductAdminControllerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @MockBean
+    ProductAdminService productAdminService;
+
+    @Test
+    void getIndexStatsTest() throws Exception {
+        when(productAdminService.getIndexStats()).thenReturn(List.of(new ProductIndexStatsRecord("active_updatedOn",
+                Map.of("active", 1), 42L, LocalDateTime.of(2024, 1, 1, 10, 0))));
+        mockMvc.perform(get("/api/v1/admin/product/indexes"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.[0].name", is("active_updatedOn")))
+                .andExpect(jsonPath("$.[0].key.active", is(1)))
+                .andExpect(jsonPath("$.[0].accesses", is(42)));
+    }
+
+    @Test
+    void explainQueriesTest() throws Exception {
+        when(productAdminService.explainQueries(false)).thenReturn(List.of(new ProductQueryPlanRecord("getProducts",
+                List.of("LIMIT", "FETCH", "IXSCAN"), List.of("_id_"), false, 51, 51, 51)));
+        mockMvc.perform(get("/api/v1/admin/product/query-plans"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.[0].query", is("getProducts")))
+                .andExpect(jsonPath("$.[0].stages[2]", is("IXSCAN")))
+                .andExpect(jsonPath("$.[0].collectionScan", is(false)));
+    }
+
+    @Test
+    void explainQueriesExecutionStatsTest() throws Exception {
+        when(productAdminService.explainQueries(true)).thenReturn(List.of(new ProductQueryPlanRecord("getProducts",
+                List.of("LIMIT", "FETCH", "IXSCAN"), List.of("_id_"), false, 51, 51, 51)));
+        mockMvc.perform(get("/api/v1/admin/product/query-plans").param("executionStats", "true"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[0].keysExamined", is(51)));
+    }
+}
@@ -1,24 +1,69 @@
 package com.cb.product.controller;
 
-
+import com.cb.product.config.CodecConfig;
+import com.cb.product.config.ProductReadRouting;
+import com.cb.product.entity.Product;
+import com.cb.product.exception.FieldValidationException;
+import com.cb.product.exception.InvalidRequestException;
 import com.cb.product.exception.RecordNotFoundException;
+import com.cb.product.exception.RequestInProgressException;
+import com.cb.product.record.ProductBatchRecord;
+import com.cb.product.record.ProductBulkItemRecord;
+import com.cb.product.record.ProductChangesRecord;
+import com.cb.product.record.ProductPageRecord;
 import com.cb.product.record.ProductRecord;
+import com.cb.product.record.ProductSearchRecord;
+import com.cb.product.record.ProductStampRecord;
+import com.cb.product.service.ProductIdempotencyService;
 import com.cb.product.service.ProductService;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validation;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
@@ -26,6 +71,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 @ExtendWith(SpringExtension.class)
 @WebMvcTest(ProductController.class)
+@Import(CodecConfig.class)
 class ProductControllerTest {
 
     public static final String LONG_DESC_1 = """
@@ -54,6 +100,9 @@ class ProductControllerTest {
     @MockBean
     ProductService productService;
 
+    @MockBean
+    ProductIdempotencyService productIdempotencyService;
+
     ProductRecord productRecord;
 
     @Autowired
@@ -86,6 +135,79 @@ class ProductControllerTest {
                 .andExpect(jsonPath("$.active", is(true)));
     }
 
+    @Test
+    void saveIdempotencyKeyTest() throws Exception {
+        productRecord = new ProductRecord(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true);
+        ProductRecord productRecordSaved = new ProductRecord("6590722a46eb225aac1cfd22", "iPhone 14",
+                new BigDecimal("58999"), "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true, 0L);
+        when(productIdempotencyService.save("order-42", productRecord)).thenReturn(productRecordSaved);
+        mockMvc.perform(post("/api/v1/product")
+                        .header("Idempotency-Key", "order-42")
+                        .content(objectMapper.writeValueAsString(productRecord))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )
+                .andDo(print())
+                .andExpect(status().isCreated())
+                .andExpect(header().string("ETag", "\"0\""))
+                .andExpect(jsonPath("$.id", is("6590722a46eb225aac1cfd22")));
+        verify(productService, never()).save(any());
+    }
+
+    @Test
+    void saveIdempotencyKeyInProgressTest() throws Exception {
+        when(productIdempotencyService.save(any(), any()))
+                .thenThrow(new RequestInProgressException("Request with Idempotency-Key [order-42] is still in progress"));
+        mockMvc.perform(post("/api/v1/product")
+                        .header("Idempotency-Key", "order-42")
+                        .content(objectMapper.writeValueAsString(productRecord))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )
+                .andDo(print())
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void saveConstraintViolationTest() throws Exception {
+        // what the write batcher throws for a product that fails validation
+        Product product = new Product(null, "", new BigDecimal("58999"), "iPhone 14 (128 GB) - Midnight",
+                LONG_DESC_1, "", "", null, null, null, true);
+        when(productService.save(productRecord)).thenThrow(new ConstraintViolationException(
+                Validation.buildDefaultValidatorFactory().getValidator().validate(product)));
+        mockMvc.perform(post("/api/v1/product")
+                        .content(objectMapper.writeValueAsString(productRecord))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.name", is("must not be blank")));
+    }
+
+    @Test
+    void saveDuplicateKeyTest() throws Exception {
+        when(productService.save(productRecord)).thenThrow(new DuplicateKeyException("E11000 duplicate key error"));
+        mockMvc.perform(post("/api/v1/product")
+                        .content(objectMapper.writeValueAsString(productRecord))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )
+                .andDo(print())
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void saveDataIntegrityViolationTest() throws Exception {
+        when(productService.save(productRecord)).thenThrow(new DataIntegrityViolationException("Document failed validation"));
+        mockMvc.perform(post("/api/v1/product")
+                        .content(objectMapper.writeValueAsString(productRecord))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void saveValidateNameNullTest() throws Exception {
         productRecord = new ProductRecord(null, "", new BigDecimal("58999"),
@@ -175,6 +297,22 @@ class ProductControllerTest {
                 .andExpect(jsonPath("$.shortDesc", is("must not be blank")));
     }
 
+    @Test
+    void saveValidateIdTest() throws Exception {
+        productRecord = new ProductRecord("iphone-14", "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true);
+        mockMvc.perform(post("/api/v1/product")
+                        .content(objectMapper.writeValueAsString(productRecord))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.id", is("must be a 24 digit hex ObjectId")));
+        verify(productService, never()).save(any());
+    }
+
     @Test
     void updateTest() throws Exception {
         when(productService.save(productRecord)).thenReturn(productRecord);
@@ -193,9 +331,73 @@ class ProductControllerTest {
                 .andExpect(jsonPath("$.active", is(true)));
     }
 
+    @Test
+    void bulkUpsertTest() throws Exception {
+        ProductRecord productRecordInvalid = new ProductRecord(null, "", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true);
+        List<ProductRecord> productRecords = List.of(productRecord, productRecordInvalid);
+        when(productService.bulkUpsert(productRecords)).thenReturn(List.of(
+                new ProductBulkItemRecord(0, "6590722a46eb225aac1cfd22", ProductBulkItemRecord.Status.UPDATED, null),
+                new ProductBulkItemRecord(1, null, ProductBulkItemRecord.Status.FAILED, Map.of("name", "must not be blank"))));
+        mockMvc.perform(post("/api/v1/product/bulk")
+                        .content(objectMapper.writeValueAsString(productRecords))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.[0].id", is("6590722a46eb225aac1cfd22")))
+                .andExpect(jsonPath("$.[0].status", is("UPDATED")))
+                .andExpect(jsonPath("$.[1].index", is(1)))
+                .andExpect(jsonPath("$.[1].status", is("FAILED")))
+                .andExpect(jsonPath("$.[1].errors.name", is("must not be blank")));
+    }
+
+    @Test
+    void patchProductTest() throws Exception {
+        when(productService.patchProduct("6590722a46eb225aac1cfd22", Map.of("price", 57999), 3L)).thenReturn(productRecord.withVersion(4L));
+        mockMvc.perform(patch("/api/v1/product/6590722a46eb225aac1cfd22")
+                        .header("If-Match", "\"3\"")
+                        .content("{\"price\": 57999}")
+                        .contentType(MediaType.APPLICATION_JSON)
+                )
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("ETag", "\"4\""))
+                .andExpect(jsonPath("$.id", is("6590722a46eb225aac1cfd22")));
+    }
+
+    @Test
+    void patchProductValidationTest() throws Exception {
+        when(productService.patchProduct("6590722a46eb225aac1cfd22", Map.of("price", -1), null))
+                .thenThrow(new FieldValidationException(Map.of("price", "must be greater than or equal to 0")));
+        mockMvc.perform(patch("/api/v1/product/6590722a46eb225aac1cfd22")
+                        .content("{\"price\": -1}")
+                        .contentType(MediaType.APPLICATION_JSON)
+                )
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.price", is("must be greater than or equal to 0")));
+    }
+
+    @Test
+    void restoreProductTest() throws Exception {
+        when(productService.restoreProduct("6590722a46eb225aac1cfd22", 3L)).thenReturn(productRecord.withVersion(4L));
+        mockMvc.perform(post("/api/v1/product/6590722a46eb225aac1cfd22/restore")
+                        .header("If-Match", "\"3\"")
+                )
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"4\""))
+                .andExpect(jsonPath("$.active", is(true)));
+    }
+
     @Test
     void getProductTest() throws Exception {
-        when(productService.getProduct("6590722a46eb225aac1cfd22")).thenReturn(productRecord);
+        when(productService.getProduct("6590722a46eb225aac1cfd22", false)).thenReturn(productRecord);
         mockMvc.perform(get("/api/v1/product/6590722a46eb225aac1cfd22"))
                 .andDo(print())
                 .andExpect(status().isOk())
@@ -208,9 +410,159 @@ class ProductControllerTest {
                 .andExpect(jsonPath("$.active", is(true)));
     }
 
+    @Test
+    void getProductFieldsTest() throws Exception {
+        ProductRecord projected = new ProductRecord("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("58999"),
+                null, null, "", null, null, LocalDateTime.of(2024, 1, 1, 0, 0), null, null, 3L);
+        when(productService.getProduct("6590722a46eb225aac1cfd22", false, Set.of("name", "price", "thumbnail")))
+                .thenReturn(projected);
+        mockMvc.perform(get("/api/v1/product/6590722a46eb225aac1cfd22").param("fields", "name,price,thumbnail"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"3-eb3fd4a0\""))
+                .andExpect(header().exists("Last-Modified"))
+                .andExpect(jsonPath("$.id", is("6590722a46eb225aac1cfd22")))
+                .andExpect(jsonPath("$.name", is("iPhone 14")))
+                .andExpect(jsonPath("$.thumbnail", is("")))
+                .andExpect(jsonPath("$.longDesc").doesNotExist())
+                .andExpect(jsonPath("$.version").doesNotExist());
+        verify(productService, never()).getProduct("6590722a46eb225aac1cfd22", false);
+    }
+
+    @Test
+    void getProductETagTest() throws Exception {
+        when(productService.getProduct("6590722a46eb225aac1cfd22", false)).thenReturn(productRecord.withVersion(7L));
+        mockMvc.perform(get("/api/v1/product/6590722a46eb225aac1cfd22"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"7\""))
+                .andExpect(jsonPath("$.version", is(7)));
+    }
+
+    @Test
+    void getProductETagPerRepresentationTest() throws Exception {
+        when(productService.getProduct("6590722a46eb225aac1cfd22", false)).thenReturn(productRecord.withVersion(7L));
+        when(productService.getProduct("6590722a46eb225aac1cfd22", false, Set.of("name"))).thenReturn(productRecord.withVersion(7L));
+        mockMvc.perform(get("/api/v1/product/6590722a46eb225aac1cfd22").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"7-cbor\""))
+                .andExpect(header().stringValues("Vary", hasItem("Accept")));
+        mockMvc.perform(get("/api/v1/product/6590722a46eb225aac1cfd22").accept(CodecConfig.APPLICATION_SMILE)
+                        .param("fields", "name"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"7-x-jackson-smile-b068931c\""));
+    }
+
+    @Test
+    void getProductNotModifiedVariantTest() throws Exception {
+        when(productService.getProductStamp("6590722a46eb225aac1cfd22", false))
+                .thenReturn(new ProductStampRecord("6590722a46eb225aac1cfd22", 7L, LocalDateTime.of(2024, 1, 1, 10, 0)));
+        when(productService.getProduct("6590722a46eb225aac1cfd22", false, Set.of("name"))).thenReturn(productRecord.withVersion(7L));
+        // the whole product's tag does not validate a projection of it
+        mockMvc.perform(get("/api/v1/product/6590722a46eb225aac1cfd22").param("fields", "name")
+                        .header("If-None-Match", "\"7\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"7-b068931c\""));
+        mockMvc.perform(get("/api/v1/product/6590722a46eb225aac1cfd22").param("fields", "name")
+                        .header("If-None-Match", "\"7-b068931c\""))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void getProductNotModifiedTest() throws Exception {
+        when(productService.getProductStamp("6590722a46eb225aac1cfd22", false))
+                .thenReturn(new ProductStampRecord("6590722a46eb225aac1cfd22", 7L, LocalDateTime.of(2024, 1, 1, 10, 0)));
+        mockMvc.perform(get("/api/v1/product/6590722a46eb225aac1cfd22")
+                        .header("If-None-Match", "\"7\""))
+                .andDo(print())
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"7\""))
+                .andExpect(content().string(""));
+        verify(productService, never()).getProduct(any(), anyBoolean());
+    }
+
+    @Test
+    void getProductModifiedTest() throws Exception {
+        LocalDateTime updatedOn = LocalDateTime.of(2024, 1, 1, 10, 0);
+        when(productService.getProductStamp("6590722a46eb225aac1cfd22", false))
+                .thenReturn(new ProductStampRecord("6590722a46eb225aac1cfd22", 8L, updatedOn));
+        when(productService.getProduct("6590722a46eb225aac1cfd22", false)).thenReturn(productRecord.withVersion(8L));
+        mockMvc.perform(get("/api/v1/product/6590722a46eb225aac1cfd22")
+                        .header("If-None-Match", "\"7\""))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"8\""))
+                .andExpect(jsonPath("$.version", is(8)));
+    }
+
+    @Test
+    void getProductNotModifiedSinceTest() throws Exception {
+        LocalDateTime updatedOn = LocalDateTime.of(2024, 1, 1, 10, 0);
+        when(productService.getProductStamp("6590722a46eb225aac1cfd22", false))
+                .thenReturn(new ProductStampRecord("6590722a46eb225aac1cfd22", null, updatedOn));
+        mockMvc.perform(get("/api/v1/product/6590722a46eb225aac1cfd22")
+                        .header("If-Modified-Since", ProductETags.lastModified(updatedOn)))
+                .andDo(print())
+                .andExpect(status().isNotModified());
+        verify(productService, never()).getProduct(any(), anyBoolean());
+    }
+
+    @Test
+    void updateIfMatchTest() throws Exception {
+        when(productService.save(productRecord.withVersion(7L))).thenReturn(productRecord.withVersion(8L));
+        mockMvc.perform(post("/api/v1/product")
+                        .header("If-Match", "\"7\"")
+                        .content(objectMapper.writeValueAsString(productRecord))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"8\""))
+                .andExpect(jsonPath("$.version", is(8)));
+    }
+
+    @Test
+    void updateIfMatchVariantTest() throws Exception {
+        when(productService.save(productRecord.withVersion(7L))).thenReturn(productRecord.withVersion(8L));
+        mockMvc.perform(post("/api/v1/product")
+                        .header("If-Match", "\"7-cbor\"")
+                        .content(objectMapper.writeValueAsString(productRecord))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"8\""));
+    }
+
+    @Test
+    void updateIfMatchConflictTest() throws Exception {
+        when(productService.save(productRecord.withVersion(7L)))
+                .thenThrow(new OptimisticLockingFailureException("Product with ID [6590722a46eb225aac1cfd22] does not match version [7]"));
+        mockMvc.perform(post("/api/v1/product")
+                        .header("If-Match", "\"7\"")
+                        .content(objectMapper.writeValueAsString(productRecord))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )
+                .andDo(print())
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(content().string("Product with ID [6590722a46eb225aac1cfd22] does not match version [7]"));
+    }
+
+    @Test
+    void updateWeakIfMatchTest() throws Exception {
+        mockMvc.perform(post("/api/v1/product")
+                        .header("If-Match", "W/\"7\"")
+                        .content(objectMapper.writeValueAsString(productRecord))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )
+                .andDo(print())
+                .andExpect(status().isPreconditionFailed());
+        verifyNoInteractions(productService);
+    }
+
     @Test
     void getProductInvalidIdTest() throws Exception {
-        when(productService.getProduct("6590722a46eb225aac1cfd22")).thenThrow(new RecordNotFoundException("Product with ID [6590722a46eb225aac1cfd22] not found"));
+        when(productService.getProduct("6590722a46eb225aac1cfd22", false)).thenThrow(new RecordNotFoundException("Product with ID [6590722a46eb225aac1cfd22] not found"));
         mockMvc.perform(get("/api/v1/product/6590722a46eb225aac1cfd22"))
                 .andDo(print())
                 .andExpect(status().isNotFound())
@@ -223,11 +575,12 @@ class ProductControllerTest {
         ProductRecord productRecord2 = new ProductRecord("6590722a46eb225aac1cfd23", "iPhone 13", new BigDecimal("49999"),
                 "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
                 null, null, null, false);
-        when(productService.getAllProducts()).thenReturn(Arrays.asList(productRecord, productRecord2));
+        when(productService.getProducts(null, null, false)).thenReturn(new ProductPageRecord(Arrays.asList(productRecord, productRecord2), null));
         mockMvc.perform(get("/api/v1/product"))
                 .andDo(print())
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().doesNotExist("X-Next-Cursor"))
                 .andExpect(jsonPath("$.[0].id", is("6590722a46eb225aac1cfd22")))
                 .andExpect(jsonPath("$.[0].name", is("iPhone 14")))
                 .andExpect(jsonPath("$.[0].price", is(58999)))
@@ -242,10 +595,280 @@ class ProductControllerTest {
                 .andExpect(jsonPath("$.[1].active", is(false)));
     }
 
+    @Test
+    void getAllProductNextCursorTest() throws Exception {
+        when(productService.getProducts("NjU5MDcyMmE0NmViMjI1YWFjMWNmZDIx", 1, false)).thenReturn(new ProductPageRecord(List.of(productRecord), "NjU5MDcyMmE0NmViMjI1YWFjMWNmZDIy"));
+        mockMvc.perform(get("/api/v1/product")
+                        .param("cursor", "NjU5MDcyMmE0NmViMjI1YWFjMWNmZDIx")
+                        .param("size", "1"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("X-Next-Cursor", "NjU5MDcyMmE0NmViMjI1YWFjMWNmZDIy"))
+                .andExpect(jsonPath("$.length()", is(1)))
+                .andExpect(jsonPath("$.[0].id", is("6590722a46eb225aac1cfd22")));
+    }
+
+    @Test
+    void getProductsByIdsTest() throws Exception {
+        when(productService.getProductsByIds(List.of("6590722a46eb225aac1cfd23", "6590722a46eb225aac1cfd22"), false))
+                .thenReturn(new ProductBatchRecord(List.of(productRecord), List.of("6590722a46eb225aac1cfd23")));
+        mockMvc.perform(get("/api/v1/product/batch").param("ids", "6590722a46eb225aac1cfd23,6590722a46eb225aac1cfd22"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.products.length()", is(1)))
+                .andExpect(jsonPath("$.products.[0].id", is("6590722a46eb225aac1cfd22")))
+                .andExpect(jsonPath("$.missing.[0]", is("6590722a46eb225aac1cfd23")));
+    }
+
+    @Test
+    void getProductsByIdsBodyTest() throws Exception {
+        List<String> ids = IntStream.range(0, 1000).mapToObj(i -> new ObjectId().toHexString()).toList();
+        when(productService.getProductsByIds(ids, false)).thenReturn(new ProductBatchRecord(List.of(), ids));
+        mockMvc.perform(post("/api/v1/product/batch")
+                        .content(objectMapper.writeValueAsString(ids))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.missing.length()", is(1000)));
+    }
+
+    @Test
+    void getAllProductFieldsTest() throws Exception {
+        ProductRecord projected = new ProductRecord("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("58999"),
+                null, null, null, null, null, null, null, null, 3L);
+        when(productService.getProducts(null, 10, false, Set.of("name", "price")))
+                .thenReturn(new ProductPageRecord(List.of(projected), null));
+        mockMvc.perform(get("/api/v1/product").param("size", "10").param("fields", "name", "price"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andExpect(jsonPath("$.[0].name", is("iPhone 14")))
+                .andExpect(jsonPath("$.[0].price", is(58999)))
+                .andExpect(jsonPath("$.[0].shortDesc").doesNotExist());
+    }
+
+    @Test
+    void getAllProductSmileTest() throws Exception {
+        when(productService.getProducts(null, null, false)).thenReturn(new ProductPageRecord(List.of(productRecord), null));
+        byte[] body = mockMvc.perform(get("/api/v1/product").accept(CodecConfig.APPLICATION_SMILE))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(CodecConfig.APPLICATION_SMILE))
+                .andExpect(header().string("ETag", startsWith("W/\"")))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        JsonNode products = new ObjectMapper(new SmileFactory()).readTree(body);
+        assertEquals("6590722a46eb225aac1cfd22", products.get(0).get("id").asText());
+        assertEquals(new BigDecimal("58999"), products.get(0).get("price").decimalValue());
+    }
+
+    @Test
+    void saveCborTest() throws Exception {
+        ObjectMapper cborMapper = new ObjectMapper(new CBORFactory()).findAndRegisterModules();
+        when(productService.save(productRecord)).thenReturn(productRecord.withVersion(0L));
+        byte[] body = mockMvc.perform(post("/api/v1/product")
+                        .contentType(MediaType.APPLICATION_CBOR)
+                        .accept(MediaType.APPLICATION_CBOR)
+                        .content(cborMapper.writeValueAsBytes(productRecord)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertEquals("iPhone 14", cborMapper.readTree(body).get("name").asText());
+    }
+
+    @Test
+    void getAllProductNotModifiedTest() throws Exception {
+        List<ProductRecord> products = List.of(productRecord.withVersion(3L));
+        when(productService.getProducts(null, null, false)).thenReturn(new ProductPageRecord(products, null));
+        String eTag = mockMvc.perform(get("/api/v1/product"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+        mockMvc.perform(get("/api/v1/product").header("If-None-Match", eTag))
+                .andDo(print())
+                .andExpect(status().isNotModified());
+
+        when(productService.getProducts(null, null, false)).thenReturn(new ProductPageRecord(List.of(productRecord.withVersion(4L)), null));
+        mockMvc.perform(get("/api/v1/product").header("If-None-Match", eTag))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[0].version", is(4)));
+    }
+
+    @Test
+    void getAllProductIncludeDeletedTest() throws Exception {
+        ProductRecord deleted = new ProductRecord("6590722a46eb225aac1cfd23", "iPhone 13", new BigDecimal("49999"),
+                "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
+                null, null, null, false);
+        when(productService.getProducts(null, null, true)).thenReturn(new ProductPageRecord(List.of(productRecord, deleted), null));
+        mockMvc.perform(get("/api/v1/product").param("includeDeleted", "true"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(2)))
+                .andExpect(jsonPath("$.[1].active", is(false)));
+    }
+
+    @Test
+    void getProductIncludeDeletedTest() throws Exception {
+        when(productService.getProduct("6590722a46eb225aac1cfd23", true)).thenReturn(new ProductRecord("6590722a46eb225aac1cfd23",
+                "iPhone 13", new BigDecimal("49999"), "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
+                null, null, null, false));
+        mockMvc.perform(get("/api/v1/product/6590722a46eb225aac1cfd23").param("includeDeleted", "true"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.active", is(false)));
+    }
+
+    @Test
+    void getAllProductInvalidCursorTest() throws Exception {
+        when(productService.getProducts("%%%", null, false)).thenThrow(new InvalidRequestException("Invalid cursor [%%%]"));
+        mockMvc.perform(get("/api/v1/product").param("cursor", "%%%"))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Invalid cursor [%%%]"));
+    }
+
+    @Test
+    void getChangesTest() throws Exception {
+        ProductRecord tombstone = new ProductRecord("6590722a46eb225aac1cfd23", null, null, null, null, null, null,
+                null, LocalDateTime.of(2024, 1, 2, 10, 30), LocalDateTime.of(2024, 1, 2, 10, 30), false, 2L);
+        when(productService.getChanges("MjAyNA", 100))
+                .thenReturn(new ProductChangesRecord(List.of(productRecord, tombstone), "MjAyNQ", true));
+        mockMvc.perform(get("/api/v1/product/changes")
+                        .param("token", "MjAyNA")
+                        .param("size", "100"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.changes[0].id", is("6590722a46eb225aac1cfd22")))
+                .andExpect(jsonPath("$.changes[1].active", is(false)))
+                .andExpect(jsonPath("$.token", is("MjAyNQ")))
+                .andExpect(jsonPath("$.more", is(true)));
+    }
+
+    @Test
+    void searchProductsTest() throws Exception {
+        ProductSearchRecord search = new ProductSearchRecord("iPhone", null, new BigDecimal("100"), null, null,
+                null, null, LocalDateTime.of(2024, 1, 1, 0, 0), null, List.of("-price", "name"));
+        ProductRecord projected = new ProductRecord("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("58999"),
+                null, null, null, null, null, null, null, null);
+        when(productService.searchProducts(search, Set.of("name", "price"), null, 1, false))
+                .thenReturn(new ProductPageRecord(List.of(projected), "MQ"));
+        mockMvc.perform(get("/api/v1/product/search")
+                        .param("name", "iPhone")
+                        .param("minPrice", "100")
+                        .param("updatedFrom", "2024-01-01T00:00:00")
+                        .param("sort", "-price,name")
+                        .param("fields", "name,price")
+                        .param("size", "1"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "MQ"))
+                .andExpect(jsonPath("$.[0].id", is("6590722a46eb225aac1cfd22")))
+                .andExpect(jsonPath("$.[0].name", is("iPhone 14")))
+                .andExpect(jsonPath("$.[0].price", is(58999)))
+                .andExpect(jsonPath("$.[0].shortDesc").doesNotExist())
+                .andExpect(jsonPath("$.[0].active").doesNotExist());
+    }
+
+    @Test
+    void searchProductsInvalidPriceTest() throws Exception {
+        mockMvc.perform(get("/api/v1/product/search").param("minPrice", "cheap"))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.minPrice").exists());
+        verifyNoInteractions(productService);
+    }
+
+    @Test
+    void exportProductsTest() throws Exception {
+        ProductRecord productRecord2 = new ProductRecord("6590722a46eb225aac1cfd23", "iPhone 13", new BigDecimal("49999"),
+                "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
+                null, null, null, false);
+        when(productService.exportProducts(false)).thenReturn(Stream.of(productRecord, productRecord2));
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/product/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().bytes((objectMapper.writeValueAsString(productRecord) + "\n"
+                        + objectMapper.writeValueAsString(productRecord2) + "\n").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void exportProductsReadAfterTest() throws Exception {
+        AtomicReference<Thread> exportThread = new AtomicReference<>();
+        AtomicReference<String> readAfter = new AtomicReference<>();
+        when(productService.exportProducts(false)).thenAnswer(invocation -> {
+            // the read routing takes the token from the request bound to the calling thread
+            exportThread.set(Thread.currentThread());
+            readAfter.set(((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest()
+                    .getHeader(ProductReadRouting.READ_AFTER_HEADER));
+            return Stream.of(productRecord);
+        });
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/product/export")
+                        .header(ProductReadRouting.READ_AFTER_HEADER, "7318431253141553153"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk());
+        // opened on the request thread, not on the async thread that writes the body
+        assertEquals(Thread.currentThread(), exportThread.get());
+        assertEquals("7318431253141553153", readAfter.get());
+    }
+
+    @Test
+    void exportProductsClosedWhenRequestEndsFirstTest() throws Exception {
+        CountDownLatch released = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+        when(productService.exportProducts(false)).thenReturn(Stream.generate(() -> {
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return productRecord;
+        }).limit(1).onClose(closed::countDown));
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/product/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // the container ends the request, on a timeout say, while the body has not written anything yet
+        mvcResult.getRequest().getAsyncContext().complete();
+
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        released.countDown();
+    }
+
     @Test
     void deleteProductTest() throws Exception {
         mockMvc.perform(delete("/api/v1/product/6590722a46eb225aac1cfd22"))
                 .andDo(print())
                 .andExpect(status().isOk());
     }
+
+    @Test
+    void deleteProductIfMatchConflictTest() throws Exception {
+        doThrow(new OptimisticLockingFailureException("Product with ID [6590722a46eb225aac1cfd22] does not match version [7]"))
+                .when(productService).deleteProduct("6590722a46eb225aac1cfd22", 7L);
+        mockMvc.perform(delete("/api/v1/product/6590722a46eb225aac1cfd22")
+                        .header("If-Match", "\"7\""))
+                .andDo(print())
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(content().string("Product with ID [6590722a46eb225aac1cfd22] does not match version [7]"));
+    }
+
+    @Test
+    void deleteProductsTest() throws Exception {
+        when(productService.deleteProducts(List.of("6590722a46eb225aac1cfd22", "6590722a46eb225aac1cfd23"))).thenReturn(2L);
+        mockMvc.perform(delete("/api/v1/product")
+                        .param("ids", "6590722a46eb225aac1cfd22", "6590722a46eb225aac1cfd23"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().string("Products Deleted: 2"));
+    }
 }
@@ -0,0 +1,325 @@
+package com.cb.product.controller;
+
+import com.cb.product.config.CodecConfig;
+import com.cb.product.exception.RecordNotFoundException;
+import com.cb.product.record.ProductBatchRecord;
+import com.cb.product.record.ProductBulkItemRecord;
+import com.cb.product.record.ProductChangesRecord;
+import com.cb.product.record.ProductPageRecord;
+import com.cb.product.record.ProductRecord;
+import com.cb.product.record.ProductSearchRecord;
+import com.cb.product.record.ProductStampRecord;
+import com.cb.product.service.ReactiveProductService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@WebFluxTest(ReactiveProductController.class)
+@Import(CodecConfig.class)
+class ReactiveProductControllerTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @MockBean
+    ReactiveProductService reactiveProductService;
+
+    ProductRecord productRecord;
+
+    @BeforeEach
+    void setup() {
+        productRecord = new ProductRecord("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", "", "", "",
+                null, null, null, true, 3L);
+    }
+
+    @Test
+    void saveTest() {
+        ProductRecord newProduct = new ProductRecord(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", "", "", "",
+                null, null, null, true);
+        when(reactiveProductService.save(newProduct)).thenReturn(Mono.just(productRecord.withVersion(0L)));
+        webTestClient.post().uri("/api/v1/product")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(newProduct)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().valueEquals("ETag", "\"0\"")
+                .expectBody()
+                .jsonPath("$.id").isEqualTo("6590722a46eb225aac1cfd22");
+    }
+
+    @Test
+    void saveValidateNameBlankTest() {
+        webTestClient.post().uri("/api/v1/product")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new ProductRecord(null, "", new BigDecimal("58999"),
+                        "iPhone 14 (128 GB) - Midnight", "", "", "",
+                        null, null, null, true))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("must not be blank");
+    }
+
+    @Test
+    void updateIfMatchConflictTest() {
+        when(reactiveProductService.save(productRecord.withVersion(2L)))
+                .thenReturn(Mono.error(new OptimisticLockingFailureException("Product with ID [6590722a46eb225aac1cfd22] does not match version [2]")));
+        webTestClient.post().uri("/api/v1/product")
+                .header("If-Match", "\"2\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(productRecord)
+                .exchange()
+                .expectStatus().isEqualTo(412)
+                .expectBody(String.class).isEqualTo("Product with ID [6590722a46eb225aac1cfd22] does not match version [2]");
+    }
+
+    @Test
+    void bulkUpsertTest() {
+        when(reactiveProductService.bulkUpsert(List.of(productRecord))).thenReturn(Mono.just(List.of(
+                new ProductBulkItemRecord(0, "6590722a46eb225aac1cfd22", ProductBulkItemRecord.Status.UPDATED, null))));
+        webTestClient.post().uri("/api/v1/product/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of(productRecord))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$[0].status").isEqualTo("UPDATED");
+    }
+
+    @Test
+    void patchProductTest() {
+        when(reactiveProductService.patchProduct("6590722a46eb225aac1cfd22", Map.of("name", "iPhone 14 Pro"), 3L))
+                .thenReturn(Mono.just(productRecord.withVersion(4L)));
+        webTestClient.patch().uri("/api/v1/product/6590722a46eb225aac1cfd22")
+                .header("If-Match", "\"3\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("name", "iPhone 14 Pro"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"4\"");
+    }
+
+    @Test
+    void restoreProductTest() {
+        when(reactiveProductService.restoreProduct("6590722a46eb225aac1cfd22", null))
+                .thenReturn(Mono.just(productRecord.withVersion(4L)));
+        webTestClient.post().uri("/api/v1/product/6590722a46eb225aac1cfd22/restore")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"4\"")
+                .expectBody()
+                .jsonPath("$.active").isEqualTo(true);
+    }
+
+    @Test
+    void getProductTest() {
+        when(reactiveProductService.getProduct("6590722a46eb225aac1cfd22", false)).thenReturn(Mono.just(productRecord));
+        webTestClient.get().uri("/api/v1/product/6590722a46eb225aac1cfd22")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"3\"")
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("iPhone 14")
+                .jsonPath("$.active").isEqualTo(true);
+    }
+
+    @Test
+    void getProductNotModifiedTest() {
+        when(reactiveProductService.getProductStamp("6590722a46eb225aac1cfd22", false))
+                .thenReturn(Mono.just(new ProductStampRecord("6590722a46eb225aac1cfd22", 3L, LocalDateTime.of(2024, 1, 1, 10, 0))));
+        webTestClient.get().uri("/api/v1/product/6590722a46eb225aac1cfd22")
+                .header("If-None-Match", "\"3\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+        verify(reactiveProductService, never()).getProduct(any(), anyBoolean());
+    }
+
+    @Test
+    void getProductNotFoundTest() {
+        when(reactiveProductService.getProduct("6590722a46eb225aac1cfd22", false))
+                .thenReturn(Mono.error(new RecordNotFoundException("Product with ID [6590722a46eb225aac1cfd22] not found")));
+        webTestClient.get().uri("/api/v1/product/6590722a46eb225aac1cfd22")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class).isEqualTo("Product with ID [6590722a46eb225aac1cfd22] not found");
+    }
+
+    @Test
+    void getAllProductTest() {
+        when(reactiveProductService.getProducts(null, 1, false))
+                .thenReturn(Mono.just(new ProductPageRecord(List.of(productRecord), "NjU5MDcyMmE0NmViMjI1YWFjMWNmZDIy")));
+        webTestClient.get().uri("/api/v1/product?size=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("X-Next-Cursor", "NjU5MDcyMmE0NmViMjI1YWFjMWNmZDIy")
+                .expectHeader().exists("ETag")
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].id").isEqualTo("6590722a46eb225aac1cfd22");
+    }
+
+    @Test
+    void getProductsByIdsTest() {
+        when(reactiveProductService.getProductsByIds(List.of("6590722a46eb225aac1cfd22", "6590722a46eb225aac1cfd23"), true))
+                .thenReturn(Mono.just(new ProductBatchRecord(List.of(productRecord), List.of("6590722a46eb225aac1cfd23"))));
+        webTestClient.get().uri("/api/v1/product/batch?ids=6590722a46eb225aac1cfd22&ids=6590722a46eb225aac1cfd23"
+                        + "&includeDeleted=true")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.products[0].id").isEqualTo("6590722a46eb225aac1cfd22")
+                .jsonPath("$.missing[0]").isEqualTo("6590722a46eb225aac1cfd23");
+    }
+
+    @Test
+    void getProductsByIdsBodyTest() {
+        when(reactiveProductService.getProductsByIds(List.of("6590722a46eb225aac1cfd22", "6590722a46eb225aac1cfd23"), false))
+                .thenReturn(Mono.just(new ProductBatchRecord(List.of(productRecord), List.of("6590722a46eb225aac1cfd23"))));
+        webTestClient.post().uri("/api/v1/product/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of("6590722a46eb225aac1cfd22", "6590722a46eb225aac1cfd23"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.products[0].id").isEqualTo("6590722a46eb225aac1cfd22")
+                .jsonPath("$.missing[0]").isEqualTo("6590722a46eb225aac1cfd23");
+    }
+
+    @Test
+    void getAllProductCborTest() throws Exception {
+        when(reactiveProductService.getProducts(null, null, false))
+                .thenReturn(Mono.just(new ProductPageRecord(List.of(productRecord), null)));
+        byte[] body = webTestClient.get().uri("/api/v1/product")
+                .accept(MediaType.APPLICATION_CBOR)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_CBOR)
+                .expectBody(byte[].class).returnResult().getResponseBody();
+
+        JsonNode products = new ObjectMapper(new CBORFactory()).readTree(body);
+        assertEquals("6590722a46eb225aac1cfd22", products.get(0).get("id").asText());
+        assertEquals(3L, products.get(0).get("version").asLong());
+    }
+
+    @Test
+    void getAllProductFieldsTest() {
+        when(reactiveProductService.getProducts(null, null, false, Set.of("price")))
+                .thenReturn(Mono.just(new ProductPageRecord(List.of(productRecord), null)));
+        webTestClient.get().uri("/api/v1/product?fields=price")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists("ETag")
+                .expectBody()
+                .jsonPath("$[0].id").isEqualTo("6590722a46eb225aac1cfd22")
+                .jsonPath("$[0].price").isEqualTo(58999)
+                .jsonPath("$[0].name").doesNotExist();
+    }
+
+    @Test
+    void getProductFieldsTest() {
+        when(reactiveProductService.getProduct("6590722a46eb225aac1cfd22", false, Set.of("name")))
+                .thenReturn(Mono.just(productRecord));
+        webTestClient.get().uri("/api/v1/product/6590722a46eb225aac1cfd22?fields=name")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"3-b068931c\"")
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("iPhone 14")
+                .jsonPath("$.shortDesc").doesNotExist();
+    }
+
+    @Test
+    void searchProductsTest() {
+        ProductSearchRecord search = new ProductSearchRecord(null, "iphone", null, new BigDecimal("60000"), null,
+                null, null, null, null, null);
+        when(reactiveProductService.searchProducts(search, Set.of("name"), null, null, false))
+                .thenReturn(Mono.just(new ProductPageRecord(List.of(productRecord), null)));
+        webTestClient.get().uri("/api/v1/product/search?text=iphone&maxPrice=60000&fields=name")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist("X-Next-Cursor")
+                .expectBody()
+                .jsonPath("$[0].id").isEqualTo("6590722a46eb225aac1cfd22")
+                .jsonPath("$[0].name").isEqualTo("iPhone 14")
+                .jsonPath("$[0].price").doesNotExist();
+    }
+
+    @Test
+    void getChangesTest() {
+        when(reactiveProductService.getChanges(null, null))
+                .thenReturn(Mono.just(new ProductChangesRecord(List.of(productRecord), "MjAyNA", false)));
+        webTestClient.get().uri("/api/v1/product/changes")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.changes[0].id").isEqualTo("6590722a46eb225aac1cfd22")
+                .jsonPath("$.token").isEqualTo("MjAyNA")
+                .jsonPath("$.more").isEqualTo(false);
+    }
+
+    @Test
+    void exportProductsTest() {
+        when(reactiveProductService.exportProducts(true)).thenReturn(Flux.just(productRecord, productRecord.withVersion(4L)));
+        webTestClient.get().uri("/api/v1/product/export?includeDeleted=true")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(ProductRecord.class).hasSize(2);
+    }
+
+    @Test
+    void deleteProductTest() {
+        when(reactiveProductService.deleteProduct("6590722a46eb225aac1cfd22", null)).thenReturn(Mono.empty());
+        webTestClient.delete().uri("/api/v1/product/6590722a46eb225aac1cfd22")
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    @Test
+    void deleteProductIfMatchConflictTest() {
+        when(reactiveProductService.deleteProduct("6590722a46eb225aac1cfd22", 2L))
+                .thenReturn(Mono.error(new OptimisticLockingFailureException("Product with ID [6590722a46eb225aac1cfd22] does not match version [2]")));
+        webTestClient.delete().uri("/api/v1/product/6590722a46eb225aac1cfd22")
+                .header("If-Match", "\"2\"")
+                .exchange()
+                .expectStatus().isEqualTo(412)
+                .expectBody(String.class).isEqualTo("Product with ID [6590722a46eb225aac1cfd22] does not match version [2]");
+    }
+
+    @Test
+    void deleteProductsTest() {
+        when(reactiveProductService.deleteProducts(List.of("6590722a46eb225aac1cfd22", "6590722a46eb225aac1cfd23")))
+                .thenReturn(Mono.just(2L));
+        webTestClient.delete().uri("/api/v1/product?ids=6590722a46eb225aac1cfd22,6590722a46eb225aac1cfd23")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("Products Deleted: 2");
+    }
+}
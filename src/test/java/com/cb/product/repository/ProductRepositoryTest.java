@@ -2,12 +2,21 @@ package com.cb.product.repository;
 
 import com.cb.product.config.MongoConfig;
 import com.cb.product.entity.Product;
+import com.cb.product.record.ProductStampRecord;
+import com.mongodb.bulk.BulkWriteResult;
 import jakarta.validation.ConstraintViolationException;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
 import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
@@ -16,10 +25,15 @@ import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
 
 @DataMongoTest
 @Testcontainers
@@ -196,4 +210,298 @@ class ProductRepositoryTest {
         assertFalse(productFound.getActive());
     }
 
+    @Test
+    void findByIdGreaterThanOrderByIdAscTest() {
+        Product product1 = productRepository.save(new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true));
+        Product product2 = productRepository.save(new Product(null, "iPhone 13", new BigDecimal("48999"),
+                "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
+                null, null, null, false));
+
+        List<Product> firstPage = productRepository.findByOrderByIdAsc(Limit.of(1));
+        assertEquals(1, firstPage.size());
+        assertEquals(product1.getId(), firstPage.get(0).getId());
+
+        List<Product> secondPage = productRepository.findByIdGreaterThanOrderByIdAsc(
+                new ObjectId(firstPage.get(0).getId()), Limit.of(1));
+        assertEquals(1, secondPage.size());
+        assertEquals(product2.getId(), secondPage.get(0).getId());
+
+        assertTrue(productRepository.findByIdGreaterThanOrderByIdAsc(new ObjectId(product2.getId()), Limit.of(1)).isEmpty());
+    }
+
+    @Test
+    void activeTrueQueriesTest() {
+        Product live = productRepository.save(new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true));
+        Product deleted = productRepository.save(new Product(null, "iPhone 13", new BigDecimal("48999"),
+                "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
+                null, null, null, false));
+
+        assertTrue(productRepository.findByIdAndActiveTrue(live.getId()).isPresent());
+        assertTrue(productRepository.findByIdAndActiveTrue(deleted.getId()).isEmpty());
+        assertEquals(List.of(live.getId()), productRepository.findByIdInAndActiveTrue(List.of(live.getId(),
+                deleted.getId(), new ObjectId().toHexString())).stream().map(Product::getId).toList());
+        assertTrue(productRepository.findStampByIdAndActiveTrue(deleted.getId()).isEmpty());
+        assertEquals(List.of(live.getId()), productRepository.findByActiveTrueOrderByIdAsc(Limit.of(10)).stream()
+                .map(Product::getId).toList());
+        assertTrue(productRepository.findByActiveTrueAndIdGreaterThanOrderByIdAsc(new ObjectId(live.getId()), Limit.of(10)).isEmpty());
+        try (Stream<Product> products = productRepository.streamByActiveTrueOrderByIdAsc()) {
+            assertEquals(1, products.count());
+        }
+    }
+
+    @Test
+    void searchTest() {
+        Product iPhone14 = productRepository.save(new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true));
+        Product iPhone13 = productRepository.save(new Product(null, "iPhone 13", new BigDecimal("9999.50"),
+                "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
+                null, null, null, true));
+        // as strings 9999.50 would sort after 58999 and fall outside this range
+        Query priceRange = query(where("active").is(true).and("price").gte(new Decimal128(new BigDecimal("5000")))
+                .lte(new Decimal128(new BigDecimal("60000")))).with(Sort.by("price", "id"));
+        priceRange.fields().include("id", "name", "price");
+
+        List<Product> products = productRepository.search(priceRange);
+
+        assertEquals(List.of(iPhone13.getId(), iPhone14.getId()), products.stream().map(Product::getId).toList());
+        assertEquals(new BigDecimal("9999.50"), products.get(0).getPrice());
+        assertNull(products.get(0).getShortDesc());
+        assertEquals(1, productRepository.search(query(where("name").regex("^iPhone 13"))).size());
+    }
+
+    @Test
+    void explainActivePageTest() {
+        Query page = query(where("active").is(true)).with(Sort.by("id")).limit(51);
+
+        assertFalse(productRepository.explain(page, true).toJson().contains("COLLSCAN"));
+    }
+
+    @Test
+    void explainChangesTest() {
+        LocalDateTime watermark = LocalDateTime.now().minusHours(1);
+        Query changes = query(where("updatedOn").lt(LocalDateTime.now()))
+                .addCriteria(new Criteria().orOperator(where("updatedOn").gt(watermark),
+                        where("updatedOn").is(watermark).and("id").gt(new ObjectId())))
+                .with(Sort.by("updatedOn", "id"))
+                .limit(51);
+
+        assertFalse(productRepository.explain(changes, true).toJson().contains("COLLSCAN"));
+    }
+
+    @Test
+    void upsertAllTest() {
+        Product existing = productRepository.save(new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true));
+        existing.setPrice(new BigDecimal("57999"));
+        Product created = new Product(new ObjectId().toHexString(), "iPhone 13", new BigDecimal("48999"),
+                "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
+                null, null, null, true);
+
+        BulkWriteResult result = productRepository.upsertAll(List.of(existing, created));
+
+        assertEquals(1, result.getMatchedCount());
+        assertEquals(1, result.getUpserts().size());
+        assertEquals(1, result.getUpserts().get(0).getIndex());
+        assertEquals(new BigDecimal("57999"), productRepository.findById(existing.getId()).orElseThrow().getPrice());
+        assertTrue(productRepository.findById(created.getId()).isPresent());
+    }
+
+    @Test
+    void saveInitialVersionTest() {
+        Product product = productRepository.save(new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true));
+        assertEquals(0L, product.getVersion());
+    }
+
+    @Test
+    void createTest() {
+        Product product = productRepository.create(new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true));
+        assertNotNull(product.getId());
+        assertEquals(0L, product.getVersion());
+        assertNotNull(product.getCreatedOn());
+        assertTrue(productRepository.findById(product.getId()).isPresent());
+    }
+
+    @Test
+    void replaceTest() {
+        Product product = productRepository.save(new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true));
+
+        Product changed = new Product(product.getId(), "iPhone 14 Pro", new BigDecimal("69999"),
+                "iPhone 14 Pro (128 GB) - Black", null, "", "",
+                null, null, null, true, 0L);
+        Optional<Product> replaced = productRepository.replace(changed);
+
+        assertTrue(replaced.isPresent());
+        assertEquals("iPhone 14 Pro", replaced.get().getName());
+        assertNull(replaced.get().getLongDesc());
+        assertEquals(product.getCreatedOn().withNano(0), replaced.get().getCreatedOn().withNano(0));
+        assertEquals(1L, replaced.get().getVersion());
+
+        // a writer still holding version 0 loses
+        assertTrue(productRepository.replace(changed).isEmpty());
+
+        changed.setVersion(null);
+        assertEquals(2L, productRepository.replace(changed).orElseThrow().getVersion());
+    }
+
+    @Test
+    void replaceWithoutActiveTest() {
+        Product product = productRepository.save(new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true));
+        assertTrue(productRepository.softDeleteById(product.getId(), null));
+
+        Product changed = new Product(product.getId(), "iPhone 14 Pro", new BigDecimal("69999"),
+                "iPhone 14 Pro (128 GB) - Black", null, "", "",
+                null, null, null, null);
+        Product replaced = productRepository.replace(changed).orElseThrow();
+
+        // a replacement without active leaves the product deleted rather than neither live nor deleted
+        assertFalse(replaced.getActive());
+        assertNotNull(replaced.getDeletedOn());
+        assertEquals("iPhone 14 Pro", replaced.getName());
+    }
+
+    @Test
+    void findStampByIdTest() {
+        Product product = productRepository.save(new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true));
+
+        ProductStampRecord stamp = productRepository.findStampById(product.getId()).orElseThrow();
+
+        assertEquals(product.getId(), stamp.id());
+        assertEquals(0L, stamp.version());
+        assertEquals(product.getUpdatedOn().withNano(0), stamp.updatedOn().withNano(0));
+        assertTrue(productRepository.findStampById(product.getId() + "99").isEmpty());
+    }
+
+    @Test
+    void indexesTest() {
+        List<String> indexNames = productRepository.indexStats().stream()
+                .map(indexStats -> indexStats.getString("name"))
+                .toList();
+        assertTrue(indexNames.containsAll(List.of("_id_", "active_updatedOn", "active_name", "active_price",
+                "updatedOn_id")));
+        assertTrue(indexNames.stream().anyMatch(name -> name.endsWith("TextIndex")));
+    }
+
+    @Test
+    void explainKeysetPageTest() {
+        Query page = query(where("id").gt(new ObjectId())).with(Sort.by("id")).limit(51);
+
+        Document explain = productRepository.explain(page, true);
+
+        assertFalse(explain.toJson().contains("COLLSCAN"));
+        assertTrue(explain.toJson().contains("_id_"));
+    }
+
+    @Test
+    void explainQueryPlannerTest() {
+        Query page = query(where("active").is(true)).with(Sort.by("id")).limit(51);
+
+        Document explain = productRepository.explain(page, false);
+
+        assertNotNull(explain.get("queryPlanner"));
+        assertNull(explain.get("executionStats"));
+    }
+
+    @Test
+    void patchTest() {
+        Product product = productRepository.save(new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true));
+
+        Optional<Product> patched = productRepository.patch(product.getId(), Map.of("price", new BigDecimal("54999")), null);
+
+        assertTrue(patched.isPresent());
+        assertEquals(new BigDecimal("54999"), patched.get().getPrice());
+        assertEquals(LONG_DESC_1, patched.get().getLongDesc());
+        assertNotNull(patched.get().getUpdatedOn());
+        assertEquals(1L, patched.get().getVersion());
+        assertTrue(productRepository.patch(product.getId(), Map.of("price", BigDecimal.ONE), 0L).isEmpty());
+        assertTrue(productRepository.patch(product.getId() + "99", Map.of("price", BigDecimal.ONE), null).isEmpty());
+    }
+
+    @Test
+    void softDeleteByIdTest() {
+        Product product = productRepository.save(new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true));
+
+        assertTrue(productRepository.softDeleteById(product.getId(), null));
+        assertFalse(productRepository.softDeleteById(product.getId() + "99", null));
+
+        Product productFound = productRepository.findById(product.getId()).orElseThrow();
+        assertFalse(productFound.getActive());
+        assertNotNull(productFound.getDeletedOn());
+        assertEquals(LONG_DESC_1, productFound.getLongDesc());
+    }
+
+    @Test
+    void softDeleteByIdVersionTest() {
+        Product product = productRepository.save(new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true));
+
+        assertFalse(productRepository.softDeleteById(product.getId(), 1L));
+        assertTrue(productRepository.findByIdAndActiveTrue(product.getId()).isPresent());
+        assertTrue(productRepository.softDeleteById(product.getId(), 0L));
+        assertTrue(productRepository.findByIdAndActiveTrue(product.getId()).isEmpty());
+    }
+
+    @Test
+    void restoreTest() {
+        Product product = productRepository.save(new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true));
+        productRepository.softDeleteById(product.getId(), null);
+
+        assertTrue(productRepository.restore(product.getId(), 0L).isEmpty());
+        Product restored = productRepository.restore(product.getId(), 1L).orElseThrow();
+
+        assertTrue(restored.getActive());
+        assertNull(restored.getDeletedOn());
+        assertEquals(2L, restored.getVersion());
+        assertTrue(productRepository.findByIdAndActiveTrue(product.getId()).isPresent());
+    }
+
+    @Test
+    void softDeleteAllByIdTest() {
+        Product product1 = productRepository.save(new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true));
+        Product product2 = productRepository.save(new Product(null, "iPhone 13", new BigDecimal("48999"),
+                "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
+                null, null, null, true));
+
+        assertEquals(2, productRepository.softDeleteAllById(List.of(product1.getId(), product2.getId(), new ObjectId().toHexString())));
+        assertTrue(productRepository.findAll().stream().noneMatch(Product::getActive));
+    }
+
+    @Test
+    void streamByOrderByIdAscTest() {
+        Product product1 = productRepository.save(new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true));
+        Product product2 = productRepository.save(new Product(null, "iPhone 13", new BigDecimal("48999"),
+                "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
+                null, null, null, false));
+
+        try (Stream<Product> products = productRepository.streamByOrderByIdAsc()) {
+            assertEquals(List.of(product1.getId(), product2.getId()), products.map(Product::getId).toList());
+        }
+    }
+
 }
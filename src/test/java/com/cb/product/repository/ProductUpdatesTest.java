@@ -0,0 +1,81 @@
+package com.cb.product.repository;
+
+import com.cb.product.entity.Product;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductUpdatesTest {
+
+    MappingMongoConverter converter;
+
+    @BeforeEach
+    void setup() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+    }
+
+    @Test
+    void replacementWithoutActiveKeepsDeleteStateTest() {
+        Update update = ProductUpdates.replacement(converter, new Product("6590722a46eb225aac1cfd22", "iPhone 14",
+                new BigDecimal("58999"), "iPhone 14 (128 GB) - Midnight", "", "", "", null, null, null, null));
+
+        // neither active nor deletedOn is unset, and every other field has a value
+        assertNull(update.getUpdateObject().get("$unset"));
+        assertFalse(update.getUpdateObject().get("$set", Document.class).containsKey("active"));
+        assertEquals(true, update.getUpdateObject().get("$setOnInsert", Document.class).get("active"));
+    }
+
+    @Test
+    void replacementWithActiveClearsDeletedOnTest() {
+        Update update = ProductUpdates.replacement(converter, new Product("6590722a46eb225aac1cfd22", "iPhone 14",
+                new BigDecimal("58999"), "iPhone 14 (128 GB) - Midnight", "", "", "", LocalDateTime.now(), null, null,
+                true));
+
+        assertEquals(true, update.getUpdateObject().get("$set", Document.class).get("active"));
+        assertTrue(update.getUpdateObject().get("$unset", Document.class).containsKey("deletedOn"));
+    }
+
+    @Test
+    void replacedKeepsDeleteStateFoundTest() {
+        LocalDateTime deletedOn = LocalDateTime.of(2023, 12, 31, 10, 0);
+        Product found = new Product("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", "", "", "", LocalDateTime.of(2023, 12, 30, 10, 0), deletedOn,
+                deletedOn, false, 4L);
+        LocalDateTime now = LocalDateTime.now();
+
+        Product replaced = ProductUpdates.replaced(new Product("6590722a46eb225aac1cfd22", "iPhone 14",
+                new BigDecimal("54999"), "iPhone 14 (128 GB) - Midnight", "", "", "", null, null, null, null),
+                found, 5L, now);
+
+        assertEquals(new BigDecimal("54999"), replaced.getPrice());
+        assertEquals(found.getCreatedOn(), replaced.getCreatedOn());
+        assertEquals(now, replaced.getUpdatedOn());
+        assertEquals(deletedOn, replaced.getDeletedOn());
+        assertFalse(replaced.getActive());
+        assertEquals(5L, replaced.getVersion());
+    }
+
+    @Test
+    void restoreClearsDeletedOnTest() {
+        Update update = ProductUpdates.restore();
+
+        assertEquals(true, update.getUpdateObject().get("$set", Document.class).get("active"));
+        assertTrue(update.getUpdateObject().get("$unset", Document.class).containsKey("deletedOn"));
+        assertEquals(1, update.getUpdateObject().get("$inc", Document.class).get("version"));
+    }
+}
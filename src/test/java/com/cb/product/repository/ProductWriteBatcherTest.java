@@ -0,0 +1,182 @@
+package com.cb.product.repository;
+
+import com.cb.product.config.ProductProperties;
+import com.cb.product.entity.Product;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validation;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ProductWriteBatcherTest {
+
+    MongoTemplate mongoTemplate;
+    BulkOperations bulkOperations;
+    ProductWriteBatcher productWriteBatcher;
+    Product product;
+
+    @BeforeEach
+    void setup() {
+        mongoTemplate = mock(MongoTemplate.class);
+        bulkOperations = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class)).thenReturn(bulkOperations);
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        productWriteBatcher = new ProductWriteBatcher(mongoTemplate,
+                Validation.buildDefaultValidatorFactory().getValidator(), new ProductProperties.WriteBatch());
+        product = new Product("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", "", "", "", null, null, null, true);
+    }
+
+    Product stored(Long version) {
+        return new Product(product.getId(), "iPhone 14", new BigDecimal("58999"), "iPhone 14 (128 GB) - Starlight",
+                "", "", "", LocalDateTime.of(2023, 12, 30, 10, 0), LocalDateTime.of(2023, 12, 30, 10, 0), null, true,
+                version);
+    }
+
+    ProductWriteBatcher.Write write(ProductWriteBatcher.Kind kind, String id, Product product) {
+        return new ProductWriteBatcher.Write(kind, id, product, new CompletableFuture<>());
+    }
+
+    @Test
+    void flushCompletesEachWriteTest() throws Exception {
+        Product created = new Product("6590722a46eb225aac1cfd30", "iPhone 15", new BigDecimal("69999"),
+                "iPhone 15 (128 GB) - Black", "", "", "", null, null, null, true);
+        when(mongoTemplate.find(any(Query.class), eq(Product.class))).thenReturn(List.of(stored(3L)));
+        List<ProductWriteBatcher.Write> batch = List.of(
+                write(ProductWriteBatcher.Kind.INSERT, created.getId(), created),
+                write(ProductWriteBatcher.Kind.UPSERT, product.getId(), product),
+                write(ProductWriteBatcher.Kind.DELETE, "6590722a46eb225aac1cfd23", null));
+
+        productWriteBatcher.flush(batch);
+
+        assertSame(created, batch.get(0).result().get());
+        // worked out from the version read before the write, not read back after it
+        Product replaced = batch.get(1).result().get();
+        assertEquals(4L, replaced.getVersion());
+        assertEquals(LocalDateTime.of(2023, 12, 30, 10, 0), replaced.getCreatedOn());
+        assertEquals("iPhone 14 (128 GB) - Midnight", replaced.getShortDesc());
+        assertNull(batch.get(2).result().get());
+        // one read and one bulk write for the whole batch, a delete of nothing is not written
+        verify(bulkOperations, times(1)).execute();
+        verify(bulkOperations, never()).updateOne(any(Query.class), any(Update.class));
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(Product.class));
+    }
+
+    @Test
+    void flushRetriesReplacementThatLostRaceTest() throws Exception {
+        BulkWriteResult emptyResult = BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of());
+        when(bulkOperations.execute()).thenThrow(new BulkOperationException("bulk write failed",
+                        new MongoBulkWriteException(emptyResult, List.of(new BulkWriteError(11000,
+                                "E11000 duplicate key error collection: product.CB_PRODUCT index: _id_ dup key",
+                                new BsonDocument(), 0)), null, new ServerAddress(), Set.of())))
+                .thenReturn(emptyResult);
+        // another writer moved the product on between the read and the write
+        when(mongoTemplate.find(any(Query.class), eq(Product.class)))
+                .thenReturn(List.of(stored(3L)), List.of(stored(4L)));
+        ProductWriteBatcher.Write upsert = write(ProductWriteBatcher.Kind.UPSERT, product.getId(), product);
+
+        productWriteBatcher.flush(List.of(upsert));
+
+        assertEquals(5L, upsert.result().get().getVersion());
+        verify(bulkOperations, times(2)).execute();
+    }
+
+    @Test
+    void flushFailsReplacementOnOtherDuplicateTest() {
+        BulkWriteResult emptyResult = BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of());
+        when(bulkOperations.execute()).thenThrow(new BulkOperationException("bulk write failed",
+                new MongoBulkWriteException(emptyResult, List.of(new BulkWriteError(11000,
+                        "E11000 duplicate key error collection: product.CB_PRODUCT index: name_unique dup key",
+                        new BsonDocument(), 0)), null, new ServerAddress(), Set.of())));
+        when(mongoTemplate.find(any(Query.class), eq(Product.class))).thenReturn(List.of(stored(3L)));
+        ProductWriteBatcher.Write upsert = write(ProductWriteBatcher.Kind.UPSERT, product.getId(), product);
+
+        productWriteBatcher.flush(List.of(upsert));
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> upsert.result().get());
+        assertInstanceOf(DuplicateKeyException.class, exception.getCause());
+        verify(bulkOperations, times(1)).execute();
+    }
+
+    @Test
+    void flushFailsOnlyTheFailedWriteTest() throws Exception {
+        BulkWriteResult emptyResult = BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of());
+        when(bulkOperations.execute()).thenThrow(new BulkOperationException("bulk write failed",
+                new MongoBulkWriteException(emptyResult,
+                        List.of(new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 0)),
+                        null, new ServerAddress(), Set.of())));
+        when(mongoTemplate.find(any(Query.class), eq(Product.class))).thenReturn(List.of(product));
+        List<ProductWriteBatcher.Write> batch = List.of(
+                write(ProductWriteBatcher.Kind.INSERT, "6590722a46eb225aac1cfd30", product),
+                write(ProductWriteBatcher.Kind.DELETE, product.getId(), null));
+
+        productWriteBatcher.flush(batch);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> batch.get(0).result().get());
+        assertInstanceOf(DuplicateKeyException.class, exception.getCause());
+        assertSame(product, batch.get(1).result().get());
+    }
+
+    @Test
+    void flushNextDefersSecondWriteToSameProductTest() {
+        when(mongoTemplate.find(any(Query.class), eq(Product.class))).thenReturn(List.of(product));
+        ProductWriteBatcher.Write upsert = write(ProductWriteBatcher.Kind.UPSERT, product.getId(), product);
+        ProductWriteBatcher.Write delete = write(ProductWriteBatcher.Kind.DELETE, product.getId(), null);
+
+        List<ProductWriteBatcher.Write> deferred = productWriteBatcher.flushNext(List.of(upsert, delete));
+
+        assertTrue(upsert.result().isDone());
+        assertEquals(List.of(delete), deferred);
+        assertFalse(delete.result().isDone());
+    }
+
+    @Test
+    void insertWhileStoppedWritesDirectlyTest() {
+        Product saved = productWriteBatcher.insert(new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", "", "", "", null, null, null, true));
+
+        assertNotNull(saved.getId());
+        assertEquals(0L, saved.getVersion());
+        assertNotNull(saved.getCreatedOn());
+        verify(bulkOperations, times(1)).insert(saved);
+        verify(mongoTemplate, never()).find(any(Query.class), eq(Product.class));
+    }
+
+    @Test
+    void insertRejectsInvalidProductTest() {
+        assertThrows(ConstraintViolationException.class, () -> productWriteBatcher.insert(new Product(null, "",
+                new BigDecimal("58999"), "iPhone 14 (128 GB) - Midnight", "", "", "", null, null, null, true)));
+        verify(mongoTemplate, never()).bulkOps(any(BulkOperations.BulkMode.class), eq(Product.class));
+    }
+}
@@ -0,0 +1,91 @@
+package com.cb.product.service.impl;
+
+import com.cb.product.config.ProductProperties;
+import com.cb.product.record.ProductIndexStatsRecord;
+import com.cb.product.record.ProductQueryPlanRecord;
+import com.cb.product.repository.ProductRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class ProductAdminServiceTest {
+
+    @Mock
+    ProductRepository productRepository;
+
+    @Spy
+    ProductProperties productProperties;
+
+    @InjectMocks
+    ProductAdminServiceImpl productAdminService;
+
+    @Test
+    void getIndexStatsTest() {
+        Date since = new Date();
+        when(productRepository.indexStats()).thenReturn(List.of(new Document("name", "active_updatedOn")
+                .append("key", new Document("active", 1).append("updatedOn", -1))
+                .append("accesses", new Document("ops", 42L).append("since", since))));
+
+        List<ProductIndexStatsRecord> indexStats = productAdminService.getIndexStats();
+
+        assertEquals(1, indexStats.size());
+        assertEquals("active_updatedOn", indexStats.get(0).name());
+        assertEquals(-1, indexStats.get(0).key().get("updatedOn"));
+        assertEquals(42L, indexStats.get(0).accesses());
+        assertNotNull(indexStats.get(0).since());
+    }
+
+    @Test
+    void explainQueriesTest() {
+        Document indexScan = new Document("queryPlanner", new Document("winningPlan", new Document("stage", "LIMIT")
+                .append("inputStage", new Document("stage", "FETCH")
+                        .append("inputStage", new Document("stage", "IXSCAN").append("indexName", "_id_")))))
+                .append("executionStats", new Document("totalKeysExamined", 3).append("totalDocsExamined", 3)
+                        .append("nReturned", 3));
+        Document collectionScan = new Document("queryPlanner", new Document("winningPlan",
+                new Document("queryPlan", new Document("stage", "COLLSCAN"))));
+        when(productRepository.explain(any(Query.class), anyBoolean())).thenReturn(indexScan);
+        when(productRepository.explain(argThat(query -> !query.isSorted() && !query.getQueryObject().isEmpty()), anyBoolean()))
+                .thenReturn(collectionScan);
+
+        List<ProductQueryPlanRecord> queryPlans = productAdminService.explainQueries(true);
+
+        assertEquals(List.of("getProduct", "getProductStamp", "getProductsByIds", "getProducts", "getProducts.cursor",
+                "getProducts.includeDeleted", "searchProducts.price", "searchProducts.name", "searchProducts.text",
+                "getChanges", "exportProducts", "deleteProducts"), queryPlans.stream().map(ProductQueryPlanRecord::query).toList());
+        ProductQueryPlanRecord page = queryPlans.get(3);
+        assertEquals(List.of("LIMIT", "FETCH", "IXSCAN"), page.stages());
+        assertEquals(List.of("_id_"), page.indexes());
+        assertFalse(page.collectionScan());
+        assertEquals(3L, page.keysExamined());
+        assertEquals(3L, page.returned());
+        ProductQueryPlanRecord getProduct = queryPlans.get(0);
+        assertTrue(getProduct.collectionScan());
+        assertEquals(0L, getProduct.docsExamined());
+        verify(productRepository, times(12)).explain(any(Query.class), eq(true));
+    }
+
+    @Test
+    void serviceQueriesTest() {
+        Query page = productAdminService.serviceQueries().get("getProducts");
+        assertEquals(51, page.getLimit());
+        assertEquals(new Document("id", 1), page.getSortObject());
+        assertEquals(true, page.getQueryObject().get("active"));
+        // an export streams everything, its explained shape stops at a page
+        assertEquals(51, productAdminService.serviceQueries().get("exportProducts").getLimit());
+        assertEquals(1, productAdminService.serviceQueries().get("getProduct").getLimit());
+    }
+}
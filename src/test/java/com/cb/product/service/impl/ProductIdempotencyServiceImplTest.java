@@ -0,0 +1,185 @@
+package com.cb.product.service.impl;
+
+import com.cb.product.config.ProductProperties;
+import com.cb.product.exception.InvalidRequestException;
+import com.cb.product.exception.RequestInProgressException;
+import com.cb.product.record.ProductRecord;
+import com.cb.product.service.ProductService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteError;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.util.DigestUtils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ProductIdempotencyServiceImplTest {
+
+    ProductService productService;
+    MongoCollection<Document> collection;
+    FindIterable<Document> found;
+    ObjectMapper objectMapper;
+    ProductProperties productProperties;
+    ProductIdempotencyServiceImpl productIdempotencyService;
+    ProductRecord productRecord;
+    ProductRecord productRecordSaved;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        productService = mock(ProductService.class);
+        collection = mock(MongoCollection.class);
+        found = mock(FindIterable.class);
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.getCollection("CB_PRODUCT_IDEMPOTENCY")).thenReturn(collection);
+        when(collection.find(any(Bson.class))).thenReturn(found);
+        when(collection.updateOne(any(Bson.class), any(Bson.class))).thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        objectMapper = new ObjectMapper().findAndRegisterModules();
+        productProperties = new ProductProperties();
+        productIdempotencyService = new ProductIdempotencyServiceImpl(productService, mongoTemplate, objectMapper,
+                productProperties);
+        productRecord = new ProductRecord(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", "", "", "", null, null, null, true);
+        productRecordSaved = new ProductRecord("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", "", "", "", LocalDateTime.of(2024, 1, 1, 10, 0),
+                LocalDateTime.of(2024, 1, 1, 10, 0), null, true, 0L);
+    }
+
+    void keyTaken(Document stored) {
+        when(collection.insertOne(any())).thenThrow(new MongoWriteException(
+                new WriteError(11000, "E11000 duplicate key error", new BsonDocument()), new ServerAddress()));
+        when(found.first()).thenReturn(stored);
+    }
+
+    Document stored(ProductRecord productRecord, String status) throws Exception {
+        return new Document("_id", "order-42")
+                .append("fingerprint", DigestUtils.md5DigestAsHex(objectMapper.writeValueAsString(productRecord)
+                        .getBytes(StandardCharsets.UTF_8)))
+                .append("status", status)
+                .append("owner", "first")
+                .append("claimedOn", new Date());
+    }
+
+    @Test
+    void firstRequestSavesAndStoresResponseTest() {
+        when(productService.create(anyString(), eq(productRecord))).thenReturn(productRecordSaved);
+
+        assertEquals(productRecordSaved, productIdempotencyService.save("order-42", productRecord));
+
+        // the product id is claimed along with the key
+        ArgumentCaptor<Document> claim = ArgumentCaptor.forClass(Document.class);
+        verify(collection, times(1)).insertOne(claim.capture());
+        verify(productService).create(claim.getValue().getString("productId"), productRecord);
+        verify(collection, times(1)).updateOne(any(Bson.class), any(Bson.class));
+        verify(collection, never()).deleteOne(any(Bson.class));
+    }
+
+    @Test
+    void repeatedKeyReplaysStoredResponseTest() throws Exception {
+        keyTaken(stored(productRecord, "DONE")
+                .append("response", objectMapper.writeValueAsString(productRecordSaved)));
+
+        assertEquals(productRecordSaved, productIdempotencyService.save("order-42", productRecord));
+
+        verifyNoInteractions(productService);
+    }
+
+    @Test
+    void keyReusedForDifferentRequestTest() throws Exception {
+        keyTaken(stored(productRecord.withVersion(3L), "DONE"));
+
+        assertThrows(InvalidRequestException.class, () -> productIdempotencyService.save("order-42", productRecord));
+        verifyNoInteractions(productService);
+    }
+
+    @Test
+    void duplicateWaitsForRequestInProgressTest() throws Exception {
+        productProperties.getIdempotency().setWaitTimeout(Duration.ZERO);
+        keyTaken(stored(productRecord, "PENDING"));
+
+        assertThrows(RequestInProgressException.class, () -> productIdempotencyService.save("order-42", productRecord));
+        verifyNoInteractions(productService);
+    }
+
+    @Test
+    void abandonedKeyTakenOverTest() throws Exception {
+        productProperties.getIdempotency().setLockTimeout(Duration.ZERO);
+        keyTaken(stored(productRecord, "PENDING").append("claimedOn", new Date(0)));
+        when(productService.save(productRecord)).thenReturn(productRecordSaved);
+
+        assertEquals(productRecordSaved, productIdempotencyService.save("order-42", productRecord));
+
+        // one update takes the key over, the next stores the response
+        verify(collection, times(2)).updateOne(any(Bson.class), any(Bson.class));
+    }
+
+    @Test
+    void abandonedCreateAnsweredWithProductSavedBeforeTest() throws Exception {
+        productProperties.getIdempotency().setLockTimeout(Duration.ZERO);
+        // the first request saved the product but never stored its response
+        keyTaken(stored(productRecord, "PENDING").append("claimedOn", new Date(0))
+                .append("productId", "6590722a46eb225aac1cfd22"));
+        when(productService.create("6590722a46eb225aac1cfd22", productRecord))
+                .thenThrow(new DuplicateKeyException("E11000 duplicate key error"));
+        when(productService.getProduct("6590722a46eb225aac1cfd22", true)).thenReturn(productRecordSaved);
+
+        assertEquals(productRecordSaved, productIdempotencyService.save("order-42", productRecord));
+
+        verify(productService, never()).save(any());
+        verify(collection, never()).deleteOne(any(Bson.class));
+        verify(collection, times(2)).updateOne(any(Bson.class), any(Bson.class));
+    }
+
+    @Test
+    void responseStoreRetriedTest() {
+        when(productService.create(anyString(), eq(productRecord))).thenReturn(productRecordSaved);
+        when(collection.updateOne(any(Bson.class), any(Bson.class)))
+                .thenThrow(new MongoException("connection reset"))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        assertEquals(productRecordSaved, productIdempotencyService.save("order-42", productRecord));
+
+        verify(collection, times(2)).updateOne(any(Bson.class), any(Bson.class));
+    }
+
+    @Test
+    void failedSaveGivesKeyBackTest() {
+        when(productService.create(anyString(), eq(productRecord)))
+                .thenThrow(new OptimisticLockingFailureException("conflict"));
+
+        assertThrows(OptimisticLockingFailureException.class,
+                () -> productIdempotencyService.save("order-42", productRecord));
+
+        verify(collection, times(1)).deleteOne(any(Bson.class));
+        verify(collection, never()).updateOne(any(Bson.class), any(Bson.class));
+    }
+
+    @Test
+    void invalidKeyTest() {
+        assertThrows(InvalidRequestException.class, () -> productIdempotencyService.save(" ", productRecord));
+        verifyNoInteractions(productService);
+    }
+}
@@ -0,0 +1,116 @@
+package com.cb.product.service.impl;
+
+import com.cb.product.config.CacheConfig;
+import com.cb.product.config.ProductProperties;
+import com.cb.product.entity.Product;
+import com.cb.product.exception.RecordNotFoundException;
+import com.cb.product.mapper.ProductMapperImpl;
+import com.cb.product.record.ProductRecord;
+import com.cb.product.repository.ProductRepository;
+import com.cb.product.service.ProductService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.cache.CacheAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(classes = {CacheConfig.class, ProductServiceImpl.class, ProductMapperImpl.class, ProductProperties.class})
+@ImportAutoConfiguration({CacheAutoConfiguration.class, JacksonAutoConfiguration.class, ValidationAutoConfiguration.class})
+class ProductServiceCacheTest {
+
+    @MockBean
+    ProductRepository productRepository;
+
+    @Autowired
+    ProductService productService;
+
+    @Autowired
+    CacheManager cacheManager;
+
+    Product product;
+
+    @BeforeEach
+    void setup() {
+        cacheManager.getCache(CacheConfig.PRODUCT_CACHE).clear();
+        product = new Product("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", "", "", "",
+                null, null, null, true);
+        when(productRepository.findByIdAndActiveTrue("6590722a46eb225aac1cfd22")).thenReturn(Optional.of(product));
+    }
+
+    @Test
+    void getProductCachedTest() {
+        productService.getProduct("6590722a46eb225aac1cfd22", false);
+        ProductRecord productRecord = productService.getProduct("6590722a46eb225aac1cfd22", false);
+
+        assertEquals("iPhone 14", productRecord.name());
+        verify(productRepository, times(1)).findByIdAndActiveTrue("6590722a46eb225aac1cfd22");
+    }
+
+    @Test
+    void saveEvictsCachedProductTest() {
+        productService.getProduct("6590722a46eb225aac1cfd22", false);
+        ProductRecord productRecord = new ProductRecord("6590722a46eb225aac1cfd22", "iPhone 14 Pro", new BigDecimal("69999"),
+                "iPhone 14 Pro (128 GB) - Black", "", "", "",
+                null, null, null, true);
+        Product productChanged = new ProductMapperImpl().productRecordToProduct(productRecord);
+        when(productRepository.replace(productChanged)).thenReturn(Optional.of(productChanged));
+        productService.save(productRecord);
+
+        when(productRepository.findByIdAndActiveTrue("6590722a46eb225aac1cfd22")).thenReturn(Optional.of(productChanged));
+        assertEquals("iPhone 14 Pro", productService.getProduct("6590722a46eb225aac1cfd22", false).name());
+        verify(productRepository, times(2)).findByIdAndActiveTrue("6590722a46eb225aac1cfd22");
+    }
+
+    @Test
+    void deleteEvictsCachedProductTest() {
+        productService.getProduct("6590722a46eb225aac1cfd22", false);
+        when(productRepository.softDeleteById("6590722a46eb225aac1cfd22", null)).thenReturn(true);
+        productService.deleteProduct("6590722a46eb225aac1cfd22", null);
+
+        when(productRepository.findByIdAndActiveTrue("6590722a46eb225aac1cfd22")).thenReturn(Optional.empty());
+        assertThrows(RecordNotFoundException.class, () -> productService.getProduct("6590722a46eb225aac1cfd22", false));
+        verify(productRepository, times(2)).findByIdAndActiveTrue("6590722a46eb225aac1cfd22");
+    }
+
+    @Test
+    void getProductsByIdsCacheFirstTest() {
+        productService.getProduct("6590722a46eb225aac1cfd22", false);
+        Product product2 = new Product("6590722a46eb225aac1cfd23", "iPhone 13", new BigDecimal("48999"),
+                "iPhone 13 (128GB) - Purple", "", "", "",
+                null, null, null, true);
+        when(productRepository.findByIdInAndActiveTrue(List.of("6590722a46eb225aac1cfd23"))).thenReturn(List.of(product2));
+
+        productService.getProductsByIds(List.of("6590722a46eb225aac1cfd22", "6590722a46eb225aac1cfd23"), false);
+        productService.getProductsByIds(List.of("6590722a46eb225aac1cfd23", "6590722a46eb225aac1cfd22"), false);
+
+        verify(productRepository, times(1)).findByIdInAndActiveTrue(List.of("6590722a46eb225aac1cfd23"));
+        verify(productRepository, times(1)).findByIdAndActiveTrue("6590722a46eb225aac1cfd22");
+    }
+
+    @Test
+    void getProductIncludeDeletedNotCachedTest() {
+        product.setActive(false);
+        when(productRepository.findById("6590722a46eb225aac1cfd22")).thenReturn(Optional.of(product));
+        productService.getProduct("6590722a46eb225aac1cfd22", true);
+        assertFalse(productService.getProduct("6590722a46eb225aac1cfd22", true).active());
+
+        verify(productRepository, times(2)).findById("6590722a46eb225aac1cfd22");
+        assertNull(cacheManager.getCache(CacheConfig.PRODUCT_CACHE).get("6590722a46eb225aac1cfd22"));
+    }
+}
@@ -1,24 +1,64 @@
 package com.cb.product.service.impl;
 
+import com.cb.product.config.CacheConfig;
+import com.cb.product.config.ProductProperties;
 import com.cb.product.entity.Product;
+import com.cb.product.exception.FieldValidationException;
+import com.cb.product.exception.InvalidRequestException;
 import com.cb.product.exception.RecordNotFoundException;
 import com.cb.product.mapper.ProductMapperImpl;
+import com.cb.product.record.ProductBatchRecord;
+import com.cb.product.record.ProductBulkItemRecord;
+import com.cb.product.record.ProductChangesRecord;
+import com.cb.product.record.ProductPageRecord;
 import com.cb.product.record.ProductRecord;
+import com.cb.product.record.ProductSearchRecord;
+import com.cb.product.record.ProductStampRecord;
 import com.cb.product.repository.ProductRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(SpringExtension.class)
@@ -50,6 +90,18 @@ class ProductServiceTest {
     @Spy
     ProductMapperImpl productMapper;
 
+    @Spy
+    ProductProperties productProperties = new ProductProperties();
+
+    @Spy
+    Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Spy
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    @Spy
+    CacheManager cacheManager = new ConcurrentMapCacheManager(CacheConfig.PRODUCT_CACHE);
+
     @InjectMocks
     ProductServiceImpl productService;
 
@@ -72,7 +124,7 @@ class ProductServiceTest {
         Product productToSave = new Product(null, "iPhone 14", new BigDecimal("58999"),
                 "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
                 null, null, null, true);
-        when(productRepository.save(productToSave)).thenReturn(product);
+        when(productRepository.create(productToSave)).thenReturn(product);
         ProductRecord productRecordSaved = productService.save(productRecord);
 
         assertEquals("6590722a46eb225aac1cfd22", productRecordSaved.id());
@@ -81,82 +133,616 @@ class ProductServiceTest {
         assertEquals("iPhone 14 (128 GB) - Midnight", productRecordSaved.shortDesc());
         assertEquals(LONG_DESC_1, productRecordSaved.longDesc());
         assertTrue(productRecordSaved.active());
-        verify(productRepository, times(1)).save(productToSave);
+        verify(productRepository, times(1)).create(productToSave);
         verify(productMapper, times(1)).productRecordToProduct(productRecord);
         verify(productMapper, times(1)).productToProductRecord(product);
     }
 
+    @Test
+    void createWithIdTest() {
+        Product productToSave = new Product("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true);
+        when(productRepository.create(productToSave)).thenReturn(product);
+        ProductRecord productRecordSaved = productService.create("6590722a46eb225aac1cfd22", productRecord);
+
+        assertEquals("6590722a46eb225aac1cfd22", productRecordSaved.id());
+        // inserted under the given id, not replaced
+        verify(productRepository, times(1)).create(productToSave);
+        verify(productRepository, never()).replace(any());
+    }
+
+    @Test
+    void updateTest() {
+        ProductRecord productRecordToUpdate = new ProductRecord("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("57999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true, 4L);
+        Product productUpdated = new Product("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("57999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true, 5L);
+        when(productRepository.replace(any())).thenReturn(Optional.of(productUpdated));
+        ProductRecord productRecordSaved = productService.save(productRecordToUpdate);
+
+        assertEquals(5L, productRecordSaved.version());
+        verify(productRepository, times(1)).replace(productMapper.productRecordToProduct(productRecordToUpdate));
+        verify(productRepository, times(0)).save(any());
+    }
+
+    @Test
+    void updateWithoutActiveTest() {
+        ProductRecord productRecordToUpdate = new ProductRecord("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("57999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, null, 4L);
+        ArgumentCaptor<Product> replaced = ArgumentCaptor.forClass(Product.class);
+        when(productRepository.replace(replaced.capture())).thenReturn(Optional.of(product));
+        ProductRecord productRecordSaved = productService.save(productRecordToUpdate);
+
+        // left to the replacement, which keeps the stored active flag rather than defaulting or unsetting it
+        assertNull(replaced.getValue().getActive());
+        assertTrue(productRecordSaved.active());
+    }
+
+    @Test
+    void bulkUpsertWithoutActiveTest() {
+        ProductRecord productRecordToUpdate = new ProductRecord("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("57999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, null);
+        ProductRecord productRecordToCreate = new ProductRecord(null, "iPhone 14", new BigDecimal("57999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, null);
+        when(productRepository.upsertAll(anyList())).thenAnswer(invocation -> {
+            List<Product> products = invocation.getArgument(0);
+            assertNull(products.get(0).getActive());
+            assertTrue(products.get(1).getActive());
+            return BulkWriteResult.acknowledged(0, 1, 0, 1, List.of(), List.of());
+        });
+        productService.bulkUpsert(List.of(productRecordToUpdate, productRecordToCreate));
+
+        verify(productRepository, times(1)).upsertAll(anyList());
+    }
+
+    @Test
+    void updateVersionConflictTest() {
+        ProductRecord productRecordToUpdate = new ProductRecord("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("57999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true, 4L);
+        when(productRepository.replace(any())).thenReturn(Optional.empty());
+        when(productRepository.existsById("6590722a46eb225aac1cfd22")).thenReturn(true);
+        Exception exception = assertThrows(OptimisticLockingFailureException.class, () -> productService.save(productRecordToUpdate));
+        assertEquals("Product with ID [6590722a46eb225aac1cfd22] does not match version [4]", exception.getMessage());
+    }
+
+    @Test
+    void updateRecordNotFoundExceptionTest() {
+        ProductRecord productRecordToUpdate = new ProductRecord("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("57999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true, 4L);
+        when(productRepository.replace(any())).thenReturn(Optional.empty());
+        when(productRepository.existsById("6590722a46eb225aac1cfd22")).thenReturn(false);
+        Exception exception = assertThrows(RecordNotFoundException.class, () -> productService.save(productRecordToUpdate));
+        assertEquals("Product with ID [6590722a46eb225aac1cfd22] not found", exception.getMessage());
+    }
+
+    @Test
+    void bulkUpsertTest() {
+        ProductRecord productRecordToUpdate = new ProductRecord("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("57999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true);
+        ProductRecord productRecordInvalid = new ProductRecord("iphone-13", "", new BigDecimal("-1"),
+                "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
+                null, null, null, true);
+        when(productRepository.upsertAll(anyList())).thenAnswer(invocation -> {
+            List<Product> products = invocation.getArgument(0);
+            assertEquals(2, products.size());
+            assertNotNull(products.get(0).getId());
+            assertNotNull(products.get(0).getCreatedOn());
+            assertNotNull(products.get(0).getUpdatedOn());
+            assertEquals("6590722a46eb225aac1cfd22", products.get(1).getId());
+            return BulkWriteResult.acknowledged(0, 1, 0, 1,
+                    List.of(new BulkWriteUpsert(0, new BsonObjectId(new ObjectId(products.get(0).getId())))),
+                    List.of());
+        });
+        List<ProductBulkItemRecord> results = productService.bulkUpsert(List.of(productRecord, productRecordToUpdate, productRecordInvalid));
+
+        assertEquals(3, results.size());
+        assertEquals(ProductBulkItemRecord.Status.CREATED, results.get(0).status());
+        assertNotNull(results.get(0).id());
+        assertEquals(ProductBulkItemRecord.Status.UPDATED, results.get(1).status());
+        assertEquals("6590722a46eb225aac1cfd22", results.get(1).id());
+        assertEquals(ProductBulkItemRecord.Status.FAILED, results.get(2).status());
+        assertEquals(Map.of("id", "must be a 24 digit hex ObjectId", "name", "must not be blank",
+                "price", "must be greater than or equal to 0"), results.get(2).errors());
+        verify(productRepository, times(1)).upsertAll(anyList());
+    }
+
+    @Test
+    void bulkUpsertChunkAndWriteErrorTest() {
+        productProperties.getBulk().setChunkSize(1);
+        BulkWriteResult emptyResult = BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of());
+        when(productRepository.upsertAll(anyList()))
+                .thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, List.of(), List.of()))
+                .thenThrow(new BulkOperationException("bulk write failed", new MongoBulkWriteException(emptyResult,
+                        List.of(new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 0)),
+                        null, new ServerAddress(), Set.of())));
+        ProductRecord productRecordToUpdate = new ProductRecord("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("57999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true);
+        List<ProductBulkItemRecord> results = productService.bulkUpsert(List.of(productRecordToUpdate, productRecord));
+
+        assertEquals(ProductBulkItemRecord.Status.UPDATED, results.get(0).status());
+        assertEquals(ProductBulkItemRecord.Status.FAILED, results.get(1).status());
+        assertEquals(Map.of("product", "E11000 duplicate key error"), results.get(1).errors());
+        verify(productRepository, times(2)).upsertAll(anyList());
+    }
+
+    @Test
+    void bulkUpsertLimitTest() {
+        productProperties.getBulk().setMaxSize(1);
+        List<ProductRecord> productRecords = List.of(productRecord, productRecord);
+        Exception exception = assertThrows(InvalidRequestException.class, () -> productService.bulkUpsert(productRecords));
+        assertEquals("Bulk request exceeds the limit of 1 products", exception.getMessage());
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void patchProductTest() {
+        Product patched = new Product("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("54999.50"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true);
+        when(productRepository.patch("6590722a46eb225aac1cfd22", Map.of("price", new BigDecimal("54999.50")), null))
+                .thenReturn(Optional.of(patched));
+        ProductRecord productRecordPatched = productService.patchProduct("6590722a46eb225aac1cfd22", Map.of("price", "54999.50"), null);
+
+        assertEquals(new BigDecimal("54999.50"), productRecordPatched.price());
+        assertEquals("iPhone 14", productRecordPatched.name());
+        verify(productRepository, times(1)).patch("6590722a46eb225aac1cfd22", Map.of("price", new BigDecimal("54999.50")), null);
+        verify(productRepository, times(0)).save(any());
+    }
+
+    @Test
+    void patchProductInvalidFieldsTest() {
+        Map<String, Object> fields = Map.of("price", -1, "name", " ", "createdOn", "2024-01-01T00:00:00", "active", true);
+        FieldValidationException exception = assertThrows(FieldValidationException.class,
+                () -> productService.patchProduct("6590722a46eb225aac1cfd22", fields, null));
+        assertEquals(Map.of("price", "must be greater than or equal to 0",
+                "name", "must not be blank",
+                "createdOn", "is not a patchable field",
+                "active", "is not a patchable field"), exception.getErrors());
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void patchProductEmptyTest() {
+        Map<String, Object> fields = Map.of();
+        Exception exception = assertThrows(InvalidRequestException.class, () -> productService.patchProduct("6590722a46eb225aac1cfd22", fields, null));
+        assertEquals("Patch must contain at least one field", exception.getMessage());
+    }
+
+    @Test
+    void patchProductRecordNotFoundExceptionTest() {
+        when(productRepository.patch("6590722a46eb225aac1cfd22", Map.of("name", "iPhone 15"), null)).thenReturn(Optional.empty());
+        Map<String, Object> fields = Map.of("name", "iPhone 15");
+        Exception exception = assertThrows(RecordNotFoundException.class, () -> productService.patchProduct("6590722a46eb225aac1cfd22", fields, null));
+        assertEquals("Product with ID [6590722a46eb225aac1cfd22] not found", exception.getMessage());
+    }
+
+    @Test
+    void patchProductVersionConflictTest() {
+        when(productRepository.patch("6590722a46eb225aac1cfd22", Map.of("name", "iPhone 15"), 3L)).thenReturn(Optional.empty());
+        when(productRepository.existsById("6590722a46eb225aac1cfd22")).thenReturn(true);
+        Map<String, Object> fields = Map.of("name", "iPhone 15");
+        Exception exception = assertThrows(OptimisticLockingFailureException.class, () -> productService.patchProduct("6590722a46eb225aac1cfd22", fields, 3L));
+        assertEquals("Product with ID [6590722a46eb225aac1cfd22] does not match version [3]", exception.getMessage());
+    }
+
     @Test
     void getProductTest(){
-        when(productRepository.findById("6590722a46eb225aac1cfd22")).thenReturn(Optional.of(product));
-        ProductRecord productRecordFound = productService.getProduct("6590722a46eb225aac1cfd22");
+        when(productRepository.findByIdAndActiveTrue("6590722a46eb225aac1cfd22")).thenReturn(Optional.of(product));
+        ProductRecord productRecordFound = productService.getProduct("6590722a46eb225aac1cfd22", false);
         assertEquals("6590722a46eb225aac1cfd22", productRecordFound.id());
         assertEquals("iPhone 14", productRecordFound.name());
         assertEquals(new BigDecimal("58999"), productRecordFound.price());
         assertEquals("iPhone 14 (128 GB) - Midnight", productRecordFound.shortDesc());
         assertEquals(LONG_DESC_1, productRecordFound.longDesc());
         assertTrue(productRecordFound.active());
-        verify(productRepository, times(1)).findById("6590722a46eb225aac1cfd22");
+        verify(productRepository, times(1)).findByIdAndActiveTrue("6590722a46eb225aac1cfd22");
         verify(productMapper, times(1)).productToProductRecord(product);
     }
 
+    @Test
+    void getProductStampTest() {
+        ProductStampRecord stamp = new ProductStampRecord("6590722a46eb225aac1cfd22", 3L, LocalDateTime.now());
+        when(productRepository.findStampByIdAndActiveTrue("6590722a46eb225aac1cfd22")).thenReturn(Optional.of(stamp));
+        assertEquals(stamp, productService.getProductStamp("6590722a46eb225aac1cfd22", false));
+        verify(productRepository, never()).findById(any());
+    }
+
+    @Test
+    void getProductStampNotFoundTest() {
+        when(productRepository.findStampByIdAndActiveTrue("6590722a46eb225aac1cfd22")).thenReturn(Optional.empty());
+        RecordNotFoundException exception = assertThrows(RecordNotFoundException.class,
+                () -> productService.getProductStamp("6590722a46eb225aac1cfd22", false));
+        assertEquals("Product with ID [6590722a46eb225aac1cfd22] not found", exception.getMessage());
+    }
+
     @Test
     void getProductRecordNotFoundExceptionTest() {
-        when(productRepository.findById("6590722a46eb225aac1cfd22")).thenReturn(Optional.empty());
-        Exception exception = assertThrows(RecordNotFoundException.class, () -> productService.getProduct("6590722a46eb225aac1cfd22"));
+        when(productRepository.findByIdAndActiveTrue("6590722a46eb225aac1cfd22")).thenReturn(Optional.empty());
+        Exception exception = assertThrows(RecordNotFoundException.class, () -> productService.getProduct("6590722a46eb225aac1cfd22", false));
         assertEquals("Product with ID [6590722a46eb225aac1cfd22] not found", exception.getMessage());
-        verify(productRepository, times(1)).findById("6590722a46eb225aac1cfd22");
+        verify(productRepository, times(1)).findByIdAndActiveTrue("6590722a46eb225aac1cfd22");
         verify(productMapper, times(0)).productToProductRecord(product);
     }
 
     @Test
-    void getAllProductsTest(){
-       Product product2 = new Product("6590722a46eb225aac1cfd23", "iPhone 13", new BigDecimal("48999"),
+    void getProductsFirstPageTest() {
+        Product product2 = new Product("6590722a46eb225aac1cfd23", "iPhone 13", new BigDecimal("48999"),
                 "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
                 null, null, null, false);
-        when(productRepository.findAll()).thenReturn(Arrays.asList(product,product2));
-        List<ProductRecord> allProducts = productService.getAllProducts();
+        when(productRepository.findByActiveTrueOrderByIdAsc(Limit.of(2))).thenReturn(Arrays.asList(product, product2));
+        ProductPageRecord page = productService.getProducts(null, 1, false);
 
-        assertEquals(2,allProducts.size());
+        assertEquals(1, page.products().size());
+        assertEquals("6590722a46eb225aac1cfd22", page.products().get(0).id());
+        assertNotNull(page.nextCursor());
+        verify(productRepository, times(1)).findByActiveTrueOrderByIdAsc(Limit.of(2));
+    }
 
-        ProductRecord productRecordFound = allProducts.get(0);
-        assertEquals("6590722a46eb225aac1cfd22", productRecordFound.id());
-        assertEquals("iPhone 14", productRecordFound.name());
-        assertEquals(new BigDecimal("58999"), productRecordFound.price());
-        assertEquals("iPhone 14 (128 GB) - Midnight", productRecordFound.shortDesc());
-        assertEquals(LONG_DESC_1, productRecordFound.longDesc());
-        assertTrue(productRecordFound.active());
+    @Test
+    void getProductsNextPageTest() {
+        Product product2 = new Product("6590722a46eb225aac1cfd23", "iPhone 13", new BigDecimal("48999"),
+                "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
+                null, null, null, false);
+        when(productRepository.findByActiveTrueOrderByIdAsc(Limit.of(2))).thenReturn(Arrays.asList(product, product2));
+        String cursor = productService.getProducts(null, 1, false).nextCursor();
+        when(productRepository.findByActiveTrueAndIdGreaterThanOrderByIdAsc(new ObjectId("6590722a46eb225aac1cfd22"),
+                Limit.of(2))).thenReturn(List.of(product2));
+        ProductPageRecord page = productService.getProducts(cursor, 1, false);
 
-        productRecordFound = allProducts.get(1);
-        assertEquals("6590722a46eb225aac1cfd23", productRecordFound.id());
-        assertEquals("iPhone 13", productRecordFound.name());
-        assertEquals(new BigDecimal("48999"), productRecordFound.price());
-        assertEquals("iPhone 13 (128GB) - Purple", productRecordFound.shortDesc());
-        assertEquals(LONG_DESC_2, productRecordFound.longDesc());
-        assertFalse(productRecordFound.active());
+        assertEquals(1, page.products().size());
+        assertEquals("6590722a46eb225aac1cfd23", page.products().get(0).id());
+        assertNull(page.nextCursor());
     }
 
     @Test
-    void deleteProductTest(){
+    void getProductsDefaultAndMaxSizeTest() {
+        when(productRepository.findByActiveTrueOrderByIdAsc(any())).thenReturn(List.of(product));
+        productService.getProducts(null, null, false);
+        productService.getProducts(null, 100000, false);
+        verify(productRepository, times(1)).findByActiveTrueOrderByIdAsc(Limit.of(51));
+        verify(productRepository, times(1)).findByActiveTrueOrderByIdAsc(Limit.of(501));
+    }
+
+    @Test
+    void getProductsInvalidSizeTest() {
+        Exception exception = assertThrows(InvalidRequestException.class, () -> productService.getProducts(null, 0, false));
+        assertEquals("Page size must be greater than 0", exception.getMessage());
+    }
+
+    static Document mapped(Query query) {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return new QueryMapper(converter).getMappedObject(query.getQueryObject(),
+                mappingContext.getPersistentEntity(Product.class));
+    }
+
+    @Test
+    void getProductsByIdsTest() {
+        Product product2 = new Product("6590722a46eb225aac1cfd23", "iPhone 13", new BigDecimal("48999"),
+                "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
+                null, null, null, true);
+        List<String> ids = List.of("6590722a46eb225aac1cfd23", "6590722a46eb225aac1cfd24", "6590722a46eb225aac1cfd22",
+                "6590722a46eb225aac1cfd23");
+        when(productRepository.findByIdInAndActiveTrue(List.of("6590722a46eb225aac1cfd23", "6590722a46eb225aac1cfd24",
+                "6590722a46eb225aac1cfd22"))).thenReturn(List.of(product, product2));
+
+        ProductBatchRecord batch = productService.getProductsByIds(ids, false);
+
+        assertEquals(List.of("6590722a46eb225aac1cfd23", "6590722a46eb225aac1cfd22"),
+                batch.products().stream().map(ProductRecord::id).toList());
+        assertEquals(List.of("6590722a46eb225aac1cfd24"), batch.missing());
+        assertNotNull(cacheManager.getCache(CacheConfig.PRODUCT_CACHE).get("6590722a46eb225aac1cfd22"));
+        verify(productRepository, never()).findAllById(any());
+    }
+
+    @Test
+    void getProductsByIdsIncludeDeletedTest() {
+        product.setActive(false);
+        when(productRepository.findAllById(List.of("6590722a46eb225aac1cfd22"))).thenReturn(List.of(product));
+
+        ProductBatchRecord batch = productService.getProductsByIds(List.of("6590722a46eb225aac1cfd22"), true);
+
+        assertFalse(batch.products().get(0).active());
+        assertTrue(batch.missing().isEmpty());
+        assertNull(cacheManager.getCache(CacheConfig.PRODUCT_CACHE).get("6590722a46eb225aac1cfd22"));
+        productProperties.getBulk().setMaxSize(1);
+        assertThrows(InvalidRequestException.class, () -> productService.getProductsByIds(
+                List.of("6590722a46eb225aac1cfd22", "6590722a46eb225aac1cfd23"), true));
+    }
+
+    @Test
+    void getProductFieldsTest() {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        when(productRepository.search(query.capture())).thenReturn(List.of(product), List.of());
+        ProductRecord found = productService.getProduct("6590722a46eb225aac1cfd22", false, Set.of("name", "thumbnail"));
+
+        assertEquals("iPhone 14", found.name());
+        assertEquals(new Document("id", "6590722a46eb225aac1cfd22").append("active", true),
+                query.getValue().getQueryObject());
+        assertEquals(new Document("name", 1).append("thumbnail", 1).append("id", 1).append("version", 1)
+                .append("updatedOn", 1).keySet(), query.getValue().getFieldsObject().keySet());
+        assertEquals(1, query.getValue().getLimit());
+        assertThrows(RecordNotFoundException.class,
+                () -> productService.getProduct("6590722a46eb225aac1cfd23", true, Set.of("name")));
+        assertFalse(query.getValue().getQueryObject().containsKey("active"));
+        verify(productRepository, never()).findByIdAndActiveTrue(any());
+    }
+
+    @Test
+    void getProductsFieldsTest() {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        Product product2 = new Product("6590722a46eb225aac1cfd23", "iPhone 13", new BigDecimal("48999"),
+                "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
+                null, null, null, true);
+        when(productRepository.search(query.capture())).thenReturn(Arrays.asList(product, product2));
+        String cursor = ProductServiceSupport.encodeCursor("6590722a46eb225aac1cfd21");
+
+        ProductPageRecord page = productService.getProducts(cursor, 1, false, Set.of("name", "price"));
+
+        assertEquals(1, page.products().size());
+        assertEquals(ProductServiceSupport.encodeCursor("6590722a46eb225aac1cfd22"), page.nextCursor());
+        assertEquals(new Document("$gt", new ObjectId("6590722a46eb225aac1cfd21")),
+                query.getValue().getQueryObject().get("id"));
+        assertEquals(true, query.getValue().getQueryObject().get("active"));
+        assertEquals(new Document("id", 1), query.getValue().getSortObject());
+        assertEquals(2, query.getValue().getLimit());
+        assertFalse(query.getValue().getFieldsObject().containsKey("longDesc"));
+        verify(productRepository, never()).findByActiveTrueAndIdGreaterThanOrderByIdAsc(any(), any());
+    }
+
+    @Test
+    void searchProductsQueryTest() {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        when(productRepository.search(query.capture())).thenReturn(List.of(product));
+        LocalDateTime updatedFrom = LocalDateTime.of(2024, 1, 1, 0, 0);
+        ProductPageRecord page = productService.searchProducts(new ProductSearchRecord("iPhone 14 (", null,
+                new BigDecimal("100"), new BigDecimal("60000"), null, null, null, updatedFrom, null,
+                List.of("-price", "name")), null, null, 10, false);
+
+        assertEquals(1, page.products().size());
+        assertNull(page.nextCursor());
+        Document filter = query.getValue().getQueryObject();
+        assertEquals(true, filter.get("active"));
+        assertEquals("^iPhone 14 \\(", filter.get("name").toString());
+        // through the real query mapper, as MongoTemplate would send them
+        assertEquals(new Document("$gte", new Decimal128(new BigDecimal("100")))
+                .append("$lte", new Decimal128(new BigDecimal("60000"))), mapped(query.getValue()).get("price"));
+        assertEquals(new Document("$gte", updatedFrom), filter.get("updatedOn"));
+        assertEquals(new Document("price", -1).append("name", 1).append("id", 1), query.getValue().getSortObject());
+        assertEquals(0, query.getValue().getSkip());
+        assertEquals(11, query.getValue().getLimit());
+    }
+
+    // why searchQuery wraps the price bounds: once this fails the mapper handles them and the wrapping can go
+    @Test
+    void queryMapperKeepsBigDecimalRangeBoundsAsStringsTest() {
+        assertEquals(new Document("$gte", new Decimal128(new BigDecimal("100"))),
+                mapped(new Query(where("price").gte(new BigDecimal("100")))).get("price"));
+        assertEquals(new Document("$gte", "100").append("$lte", "60000"),
+                mapped(new Query(where("price").gte(new BigDecimal("100")).lte(new BigDecimal("60000")))).get("price"));
+    }
+
+    @Test
+    void searchProductsNextPageTest() {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        Product product2 = new Product("6590722a46eb225aac1cfd23", "iPhone 13", new BigDecimal("48999"),
+                "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
+                null, null, null, true);
+        when(productRepository.search(query.capture())).thenReturn(Arrays.asList(product, product2), List.of(product2));
+        ProductSearchRecord search = new ProductSearchRecord(null, "iphone", null, null, null, null, null, null, null,
+                null);
+
+        String cursor = productService.searchProducts(search, Set.of("name"), null, 1, true).nextCursor();
+        ProductPageRecord page = productService.searchProducts(search, Set.of("name"), cursor, 1, true);
+
+        assertEquals("6590722a46eb225aac1cfd23", page.products().get(0).id());
+        assertNull(page.nextCursor());
+        Query second = query.getAllValues().get(1);
+        assertEquals(1, second.getSkip());
+        assertFalse(second.getQueryObject().containsKey("active"));
+        assertEquals(new Document("$search", "iphone"), second.getQueryObject().get("$text"));
+        assertEquals(List.of("score", "id"), List.copyOf(second.getSortObject().keySet()));
+        assertEquals(1, second.getFieldsObject().get("name"));
+        assertEquals(1, second.getFieldsObject().get("id"));
+    }
+
+    @Test
+    void searchProductsInvalidRequestTest() {
+        ProductSearchRecord byDescription = new ProductSearchRecord(null, null, null, null, null, null, null, null,
+                null, List.of("shortDesc"));
+        assertEquals("Cannot sort by [shortDesc]", assertThrows(InvalidRequestException.class,
+                () -> productService.searchProducts(byDescription, null, null, null, false)).getMessage());
+        ProductSearchRecord any = new ProductSearchRecord(null, null, null, null, null, null, null, null, null, null);
+        assertEquals("Unknown field [colour]", assertThrows(InvalidRequestException.class,
+                () -> productService.searchProducts(any, Set.of("colour"), null, null, false)).getMessage());
+        ProductSearchRecord inverted = new ProductSearchRecord(null, null, new BigDecimal("10"), new BigDecimal("1"),
+                null, null, null, null, null, null);
+        assertThrows(InvalidRequestException.class, () -> productService.searchProducts(inverted, null, null, null, false));
+        String tooDeep = ProductServiceSupport.encodeCursor("10001");
+        assertThrows(InvalidRequestException.class, () -> productService.searchProducts(any, null, tooDeep, null, false));
+        assertThrows(InvalidRequestException.class,
+                () -> productService.searchProducts(any, null, "6590722a46eb225aac1cfd22", null, false));
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void getChangesTest() {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        LocalDateTime updatedOn = LocalDateTime.of(2024, 1, 2, 10, 30);
+        Product updated = new Product("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, updatedOn, null, true, 4L);
+        Product deleted = new Product("6590722a46eb225aac1cfd23", "iPhone 13", new BigDecimal("48999"),
+                "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
+                null, updatedOn, updatedOn, false, 2L);
+        when(productRepository.search(query.capture())).thenReturn(Arrays.asList(updated, deleted, product), List.of());
+
+        ProductChangesRecord changes = productService.getChanges(null, 2);
+
+        assertEquals(2, changes.changes().size());
+        assertTrue(changes.more());
+        assertEquals(new BigDecimal("58999"), changes.changes().get(0).price());
+        ProductRecord tombstone = changes.changes().get(1);
+        assertEquals("6590722a46eb225aac1cfd23", tombstone.id());
+        assertFalse(tombstone.active());
+        assertEquals(updatedOn, tombstone.deletedOn());
+        assertNull(tombstone.name());
+        assertEquals(new Document("updatedOn", 1).append("id", 1), query.getValue().getSortObject());
+        assertEquals(3, query.getValue().getLimit());
+
+        // nothing new: the token is handed back as it was
+        ProductChangesRecord none = productService.getChanges(changes.token(), 2);
+        assertEquals(changes.token(), none.token());
+        assertFalse(none.more());
+        Document filter = query.getValue().getQueryObject();
+        assertEquals(List.of(new Document("updatedOn", new Document("$gt", updatedOn)),
+                new Document("updatedOn", updatedOn).append("id",
+                        new Document("$gt", new ObjectId("6590722a46eb225aac1cfd23")))),
+                filter.get("$or"));
+        LocalDateTime settledBefore = (LocalDateTime) filter.get("updatedOn", Document.class).get("$lt");
+        assertTrue(settledBefore.isBefore(LocalDateTime.now().minusSeconds(4)));
+    }
+
+    @Test
+    void getChangesInvalidTokenTest() {
+        assertThrows(InvalidRequestException.class, () -> productService.getChanges("%%%", null));
+        assertThrows(InvalidRequestException.class,
+                () -> productService.getChanges(ProductServiceSupport.encodeCursor("yesterday,1"), null));
+        assertThrows(InvalidRequestException.class,
+                () -> productService.getChanges(ProductServiceSupport.encodeCursor("2024-01-02T10:30"), null));
+        assertThrows(InvalidRequestException.class,
+                () -> productService.getChanges(ProductServiceSupport.encodeCursor("2024-01-02T10:30,iphone-14"), null));
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void getProductsInvalidCursorTest() {
+        Exception exception = assertThrows(InvalidRequestException.class, () -> productService.getProducts("%%%", 10, false));
+        assertEquals("Invalid cursor [%%%]", exception.getMessage());
+        // every stored id is an ObjectId, so a cursor past anything else is not one this service handed out
+        String cursor = ProductServiceSupport.encodeCursor("iphone-14");
+        assertThrows(InvalidRequestException.class, () -> productService.getProducts(cursor, 10, false));
+        assertThrows(InvalidRequestException.class,
+                () -> productService.getProducts(cursor, 10, false, Set.of("name")));
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void getProductsIncludeDeletedTest() {
+        Product product2 = new Product("6590722a46eb225aac1cfd23", "iPhone 13", new BigDecimal("48999"),
+                "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
+                null, null, null, false);
+        when(productRepository.findByOrderByIdAsc(Limit.of(2))).thenReturn(Arrays.asList(product, product2));
+        String cursor = productService.getProducts(null, 1, true).nextCursor();
+        when(productRepository.findByIdGreaterThanOrderByIdAsc(new ObjectId("6590722a46eb225aac1cfd22"),
+                Limit.of(2))).thenReturn(List.of(product2));
+        ProductPageRecord page = productService.getProducts(cursor, 1, true);
+
+        assertFalse(page.products().get(0).active());
+        verify(productRepository, never()).findByActiveTrueOrderByIdAsc(any());
+        verify(productRepository, never()).findByActiveTrueAndIdGreaterThanOrderByIdAsc(any(), any());
+    }
+
+    @Test
+    void getProductIncludeDeletedTest() {
+        product.setActive(false);
         when(productRepository.findById("6590722a46eb225aac1cfd22")).thenReturn(Optional.of(product));
-        when(productRepository.save(product)).thenReturn(product);
-        productService.deleteProduct("6590722a46eb225aac1cfd22");
+        assertFalse(productService.getProduct("6590722a46eb225aac1cfd22", true).active());
+        verify(productRepository, never()).findByIdAndActiveTrue(any());
+    }
 
-        assertEquals("6590722a46eb225aac1cfd22", product.getId());
-        assertEquals("iPhone 14", product.getName());
-        assertEquals(new BigDecimal("58999"), product.getPrice());
-        assertEquals("iPhone 14 (128 GB) - Midnight", product.getShortDesc());
-        assertEquals(LONG_DESC_1, product.getLongDesc());
-        assertNotNull(product.getDeletedOn());
-        assertFalse(product.getActive());
+    @Test
+    void saveDefaultsActiveTest() {
+        Product productToSave = new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, true);
+        when(productRepository.create(productToSave)).thenReturn(product);
+        productService.save(new ProductRecord(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", LONG_DESC_1, "", "",
+                null, null, null, null));
+        verify(productRepository, times(1)).create(productToSave);
+    }
+
+    @Test
+    void exportProductsTest() {
+        Product product2 = new Product("6590722a46eb225aac1cfd23", "iPhone 13", new BigDecimal("48999"),
+                "iPhone 13 (128GB) - Purple", LONG_DESC_2, "", "",
+                null, null, null, false);
+        when(productRepository.streamByActiveTrueOrderByIdAsc()).thenReturn(Stream.of(product, product2));
+        List<ProductRecord> exported;
+        try (Stream<ProductRecord> products = productService.exportProducts(false)) {
+            exported = products.toList();
+        }
+        assertEquals(2, exported.size());
+        assertEquals("6590722a46eb225aac1cfd22", exported.get(0).id());
+        assertEquals("6590722a46eb225aac1cfd23", exported.get(1).id());
+        verify(productMapper, times(1)).productToProductRecord(product);
+        verify(productMapper, times(1)).productToProductRecord(product2);
+    }
+
+    @Test
+    void deleteProductTest(){
+        when(productRepository.softDeleteById("6590722a46eb225aac1cfd22", null)).thenReturn(true);
+        productService.deleteProduct("6590722a46eb225aac1cfd22", null);
+
+        verify(productRepository, times(1)).softDeleteById("6590722a46eb225aac1cfd22", null);
+        verify(productRepository, times(0)).findById("6590722a46eb225aac1cfd22");
+        verify(productRepository, times(0)).save(any());
+    }
+
+    @Test
+    void deleteProductVersionConflictTest() {
+        when(productRepository.softDeleteById("6590722a46eb225aac1cfd22", 3L)).thenReturn(false);
+        when(productRepository.existsById("6590722a46eb225aac1cfd22")).thenReturn(true);
+        Exception exception = assertThrows(OptimisticLockingFailureException.class, () -> productService.deleteProduct("6590722a46eb225aac1cfd22", 3L));
+        assertEquals("Product with ID [6590722a46eb225aac1cfd22] does not match version [3]", exception.getMessage());
     }
 
     @Test
     void deleteProductRecordNotFoundExceptionTest() {
-        when(productRepository.findById("6590722a46eb225aac1cfd22")).thenReturn(Optional.empty());
-        Exception exception = assertThrows(RecordNotFoundException.class, () -> productService.deleteProduct("6590722a46eb225aac1cfd22"));
+        when(productRepository.softDeleteById("6590722a46eb225aac1cfd22", null)).thenReturn(false);
+        Exception exception = assertThrows(RecordNotFoundException.class, () -> productService.deleteProduct("6590722a46eb225aac1cfd22", null));
         assertEquals("Product with ID [6590722a46eb225aac1cfd22] not found", exception.getMessage());
-        verify(productRepository, times(1)).findById("6590722a46eb225aac1cfd22");
+        verify(productRepository, times(1)).softDeleteById("6590722a46eb225aac1cfd22", null);
         verify(productRepository, times(0)).save(product);
     }
+
+    @Test
+    void deleteProductsTest() {
+        List<String> ids = List.of("6590722a46eb225aac1cfd22", "6590722a46eb225aac1cfd23");
+        when(productRepository.softDeleteAllById(ids)).thenReturn(2L);
+        assertEquals(2, productService.deleteProducts(ids));
+        verify(productRepository, times(1)).softDeleteAllById(ids);
+    }
+
+    @Test
+    void restoreProductTest() {
+        when(productRepository.restore("6590722a46eb225aac1cfd22", 3L)).thenReturn(Optional.of(product));
+        ProductRecord productRecordRestored = productService.restoreProduct("6590722a46eb225aac1cfd22", 3L);
+
+        assertTrue(productRecordRestored.active());
+        assertNull(productRecordRestored.deletedOn());
+        verify(productRepository, times(1)).restore("6590722a46eb225aac1cfd22", 3L);
+    }
+
+    @Test
+    void restoreProductRecordNotFoundExceptionTest() {
+        when(productRepository.restore("6590722a46eb225aac1cfd22", null)).thenReturn(Optional.empty());
+        Exception exception = assertThrows(RecordNotFoundException.class, () -> productService.restoreProduct("6590722a46eb225aac1cfd22", null));
+        assertEquals("Product with ID [6590722a46eb225aac1cfd22] not found", exception.getMessage());
+    }
 }
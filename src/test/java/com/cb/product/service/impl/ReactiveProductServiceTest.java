@@ -0,0 +1,344 @@
+package com.cb.product.service.impl;
+
+import com.cb.product.config.ProductProperties;
+import com.cb.product.entity.Product;
+import com.cb.product.exception.FieldValidationException;
+import com.cb.product.exception.InvalidRequestException;
+import com.cb.product.exception.RecordNotFoundException;
+import com.cb.product.mapper.ProductMapperImpl;
+import com.cb.product.record.ProductBulkItemRecord;
+import com.cb.product.record.ProductRecord;
+import com.cb.product.record.ProductSearchRecord;
+import com.cb.product.repository.ReactiveProductRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class ReactiveProductServiceTest {
+
+    @Mock
+    ReactiveProductRepository reactiveProductRepository;
+
+    @Spy
+    ProductMapperImpl productMapper;
+
+    @Spy
+    ProductProperties productProperties = new ProductProperties();
+
+    @Spy
+    Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Spy
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    ReactiveProductServiceImpl reactiveProductService;
+
+    Product product;
+
+    @BeforeEach
+    void setup() {
+        product = new Product("6590722a46eb225aac1cfd22", "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", "", "", "",
+                null, null, null, true, 3L);
+    }
+
+    @Test
+    void saveTest() {
+        Product productToSave = new Product(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", "", "", "",
+                null, null, null, true);
+        when(reactiveProductRepository.save(productToSave)).thenReturn(Mono.just(product));
+
+        StepVerifier.create(reactiveProductService.save(new ProductRecord(null, "iPhone 14", new BigDecimal("58999"),
+                        "iPhone 14 (128 GB) - Midnight", "", "", "",
+                        null, null, null, null)))
+                .assertNext(saved -> assertEquals("6590722a46eb225aac1cfd22", saved.id()))
+                .verifyComplete();
+    }
+
+    @Test
+    void updateVersionConflictTest() {
+        when(reactiveProductRepository.replace(any())).thenReturn(Mono.empty());
+        when(reactiveProductRepository.existsById("6590722a46eb225aac1cfd22")).thenReturn(Mono.just(true));
+
+        StepVerifier.create(reactiveProductService.save(productMapper.productToProductRecord(product)))
+                .expectError(OptimisticLockingFailureException.class)
+                .verify();
+    }
+
+    @Test
+    void updateNotFoundTest() {
+        when(reactiveProductRepository.replace(any())).thenReturn(Mono.empty());
+
+        StepVerifier.create(reactiveProductService.save(productMapper.productToProductRecord(product).withVersion(null)))
+                .expectError(RecordNotFoundException.class)
+                .verify();
+        verify(reactiveProductRepository, never()).existsById(anyString());
+    }
+
+    @Test
+    void bulkUpsertTest() {
+        BulkWriteResult emptyResult = BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of());
+        productProperties.getBulk().setChunkSize(1);
+        when(reactiveProductRepository.upsertAll(anyList()))
+                .thenAnswer(invocation -> {
+                    List<Product> products = invocation.getArgument(0);
+                    return Mono.just(BulkWriteResult.acknowledged(0, 1, 0, 1,
+                            List.of(new BulkWriteUpsert(0, new BsonObjectId(new ObjectId(products.get(0).getId())))),
+                            List.of()));
+                })
+                .thenReturn(Mono.error(new DuplicateKeyException("E11000 duplicate key error", new MongoBulkWriteException(emptyResult,
+                        List.of(new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 0)),
+                        null, new ServerAddress(), Set.of()))));
+        ProductRecord newProduct = new ProductRecord(null, "iPhone 14", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", "", "", "",
+                null, null, null, true);
+        ProductRecord invalid = new ProductRecord(null, "", new BigDecimal("58999"),
+                "iPhone 14 (128 GB) - Midnight", "", "", "",
+                null, null, null, true);
+
+        StepVerifier.create(reactiveProductService.bulkUpsert(Arrays.asList(newProduct, invalid, newProduct)))
+                .assertNext(results -> {
+                    assertEquals(ProductBulkItemRecord.Status.CREATED, results.get(0).status());
+                    assertNotNull(results.get(0).id());
+                    assertEquals(Map.of("name", "must not be blank"), results.get(1).errors());
+                    assertEquals(ProductBulkItemRecord.Status.FAILED, results.get(2).status());
+                    assertEquals(Map.of("product", "E11000 duplicate key error"), results.get(2).errors());
+                })
+                .verifyComplete();
+        verify(reactiveProductRepository, times(2)).upsertAll(anyList());
+    }
+
+    @Test
+    void bulkUpsertLimitTest() {
+        productProperties.getBulk().setMaxSize(1);
+
+        StepVerifier.create(reactiveProductService.bulkUpsert(List.of(productMapper.productToProductRecord(product),
+                        productMapper.productToProductRecord(product))))
+                .expectErrorMessage("Bulk request exceeds the limit of 1 products")
+                .verify();
+        verifyNoInteractions(reactiveProductRepository);
+    }
+
+    @Test
+    void patchProductTest() {
+        when(reactiveProductRepository.patch("6590722a46eb225aac1cfd22", Map.of("price", new BigDecimal("54999")), 3L))
+                .thenReturn(Mono.just(product));
+
+        StepVerifier.create(reactiveProductService.patchProduct("6590722a46eb225aac1cfd22", Map.of("price", 54999), 3L))
+                .assertNext(patched -> assertEquals(3L, patched.version()))
+                .verifyComplete();
+    }
+
+    @Test
+    void patchProductValidationTest() {
+        StepVerifier.create(reactiveProductService.patchProduct("6590722a46eb225aac1cfd22", Map.of("id", "x"), null))
+                .expectError(FieldValidationException.class)
+                .verify();
+        StepVerifier.create(reactiveProductService.patchProduct("6590722a46eb225aac1cfd22", Map.of(), null))
+                .expectError(InvalidRequestException.class)
+                .verify();
+    }
+
+    @Test
+    void getProductTest() {
+        when(reactiveProductRepository.findByIdAndActiveTrue("6590722a46eb225aac1cfd22")).thenReturn(Mono.just(product));
+        when(reactiveProductRepository.findById("6590722a46eb225aac1cfd23")).thenReturn(Mono.empty());
+
+        StepVerifier.create(reactiveProductService.getProduct("6590722a46eb225aac1cfd22", false))
+                .assertNext(found -> assertEquals("iPhone 14", found.name()))
+                .verifyComplete();
+        StepVerifier.create(reactiveProductService.getProduct("6590722a46eb225aac1cfd23", true))
+                .expectErrorMessage("Product with ID [6590722a46eb225aac1cfd23] not found")
+                .verify();
+    }
+
+    @Test
+    void getProductsTest() {
+        Product product2 = new Product("6590722a46eb225aac1cfd23", "iPhone 13", new BigDecimal("48999"),
+                "iPhone 13 (128GB) - Purple", "", "", "",
+                null, null, null, true);
+        when(reactiveProductRepository.findByActiveTrueOrderByIdAsc(Limit.of(2))).thenReturn(Flux.just(product, product2));
+        when(reactiveProductRepository.findByActiveTrueAndIdGreaterThanOrderByIdAsc(new ObjectId("6590722a46eb225aac1cfd22"),
+                Limit.of(2)))
+                .thenReturn(Flux.just(product2));
+
+        String cursor = reactiveProductService.getProducts(null, 1, false).block().nextCursor();
+        assertNotNull(cursor);
+        StepVerifier.create(reactiveProductService.getProducts(cursor, 1, false))
+                .assertNext(page -> {
+                    assertEquals("6590722a46eb225aac1cfd23", page.products().get(0).id());
+                    assertNull(page.nextCursor());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void getProductsInvalidCursorTest() {
+        StepVerifier.create(reactiveProductService.getProducts("%%%", 10, false))
+                .expectErrorMessage("Invalid cursor [%%%]")
+                .verify();
+        verifyNoInteractions(reactiveProductRepository);
+    }
+
+    @Test
+    void getProductsByIdsTest() {
+        Product product2 = new Product("6590722a46eb225aac1cfd23", "iPhone 13", new BigDecimal("48999"),
+                "iPhone 13 (128GB) - Purple", "", "", "",
+                null, null, null, true);
+        when(reactiveProductRepository.findByIdInAndActiveTrue(Set.of("6590722a46eb225aac1cfd22",
+                "6590722a46eb225aac1cfd23", "6590722a46eb225aac1cfd24"))).thenReturn(Flux.just(product, product2));
+
+        StepVerifier.create(reactiveProductService.getProductsByIds(List.of("6590722a46eb225aac1cfd24",
+                        "6590722a46eb225aac1cfd23", "6590722a46eb225aac1cfd22"), false))
+                .assertNext(batch -> {
+                    assertEquals(List.of("6590722a46eb225aac1cfd23", "6590722a46eb225aac1cfd22"),
+                            batch.products().stream().map(ProductRecord::id).toList());
+                    assertEquals(List.of("6590722a46eb225aac1cfd24"), batch.missing());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void getProductFieldsTest() {
+        when(reactiveProductRepository.search(any())).thenReturn(Flux.just(product), Flux.empty());
+
+        StepVerifier.create(reactiveProductService.getProduct("6590722a46eb225aac1cfd22", false, Set.of("name")))
+                .assertNext(found -> assertEquals("iPhone 14", found.name()))
+                .verifyComplete();
+        StepVerifier.create(reactiveProductService.getProduct("6590722a46eb225aac1cfd23", false, Set.of("name")))
+                .expectError(RecordNotFoundException.class)
+                .verify();
+        StepVerifier.create(reactiveProductService.getProduct("6590722a46eb225aac1cfd23", false, Set.of("colour")))
+                .expectErrorMessage("Unknown field [colour]")
+                .verify();
+        verify(reactiveProductRepository, never()).findByIdAndActiveTrue(any());
+    }
+
+    @Test
+    void searchProductsTest() {
+        Product product2 = new Product("6590722a46eb225aac1cfd23", "iPhone 13", new BigDecimal("48999"),
+                "iPhone 13 (128GB) - Purple", "", "", "",
+                null, null, null, true);
+        when(reactiveProductRepository.search(any())).thenReturn(Flux.just(product, product2), Flux.just(product2));
+        ProductSearchRecord search = new ProductSearchRecord("iPhone", null, null, new BigDecimal("60000"), null,
+                null, null, null, null, List.of("-price"));
+
+        String cursor = reactiveProductService.searchProducts(search, null, null, 1, false).block().nextCursor();
+        assertNotNull(cursor);
+        StepVerifier.create(reactiveProductService.searchProducts(search, null, cursor, 1, false))
+                .assertNext(page -> {
+                    assertEquals("6590722a46eb225aac1cfd23", page.products().get(0).id());
+                    assertNull(page.nextCursor());
+                })
+                .verifyComplete();
+        verify(reactiveProductRepository).search(argThat(query -> query.getSkip() == 1 && query.getLimit() == 2));
+    }
+
+    @Test
+    void getChangesTest() {
+        LocalDateTime updatedOn = LocalDateTime.of(2024, 1, 2, 10, 30);
+        Product deleted = new Product("6590722a46eb225aac1cfd23", "iPhone 13", new BigDecimal("48999"),
+                "iPhone 13 (128GB) - Purple", "", "", "",
+                null, updatedOn, updatedOn, false, 2L);
+        when(reactiveProductRepository.search(any())).thenReturn(Flux.just(deleted));
+
+        StepVerifier.create(reactiveProductService.getChanges(null, null))
+                .assertNext(changes -> {
+                    assertEquals(1, changes.changes().size());
+                    assertFalse(changes.changes().get(0).active());
+                    assertNull(changes.changes().get(0).name());
+                    assertFalse(changes.more());
+                    assertEquals("2024-01-02T10:30,6590722a46eb225aac1cfd23",
+                            ProductServiceSupport.decodeCursor(changes.token()));
+                })
+                .verifyComplete();
+        verify(reactiveProductRepository).search(argThat(query -> query.getLimit() == 51
+                && query.getSortObject().containsKey("updatedOn")));
+    }
+
+    @Test
+    void searchProductsInvalidSortTest() {
+        ProductSearchRecord search = new ProductSearchRecord(null, null, null, null, null, null, null, null, null,
+                List.of("thumbnail"));
+        StepVerifier.create(reactiveProductService.searchProducts(search, null, null, null, false))
+                .expectErrorMessage("Cannot sort by [thumbnail]")
+                .verify();
+        verifyNoInteractions(reactiveProductRepository);
+    }
+
+    @Test
+    void exportProductsTest() {
+        when(reactiveProductRepository.findByOrderByIdAsc()).thenReturn(Flux.just(product));
+
+        StepVerifier.create(reactiveProductService.exportProducts(true))
+                .assertNext(exported -> assertEquals("6590722a46eb225aac1cfd22", exported.id()))
+                .verifyComplete();
+    }
+
+    @Test
+    void deleteProductTest() {
+        when(reactiveProductRepository.softDeleteById("6590722a46eb225aac1cfd22", null)).thenReturn(Mono.just(true));
+        when(reactiveProductRepository.softDeleteById("6590722a46eb225aac1cfd23", null)).thenReturn(Mono.just(false));
+
+        StepVerifier.create(reactiveProductService.deleteProduct("6590722a46eb225aac1cfd22", null))
+                .verifyComplete();
+        StepVerifier.create(reactiveProductService.deleteProduct("6590722a46eb225aac1cfd23", null))
+                .expectError(RecordNotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    void deleteProductVersionConflictTest() {
+        when(reactiveProductRepository.softDeleteById("6590722a46eb225aac1cfd22", 3L)).thenReturn(Mono.just(false));
+        when(reactiveProductRepository.existsById("6590722a46eb225aac1cfd22")).thenReturn(Mono.just(true));
+
+        StepVerifier.create(reactiveProductService.deleteProduct("6590722a46eb225aac1cfd22", 3L))
+                .expectError(OptimisticLockingFailureException.class)
+                .verify();
+    }
+
+    @Test
+    void deleteProductsTest() {
+        when(reactiveProductRepository.softDeleteAllById(List.of("6590722a46eb225aac1cfd22"))).thenReturn(Mono.just(1L));
+
+        StepVerifier.create(reactiveProductService.deleteProducts(List.of("6590722a46eb225aac1cfd22")))
+                .expectNext(1L)
+                .verifyComplete();
+    }
+}